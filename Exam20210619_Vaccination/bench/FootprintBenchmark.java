@@ -0,0 +1,61 @@
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import it.polito.oop.vaccination.Vaccines;
+
+/**
+ * Measures the heap retained by a {@link Vaccines} registry
+ * with the object store and with the compact columnar store.
+ * <p>
+ * Usage: {@code java -Xmx8g FootprintBenchmark [people]}
+ */
+public final class FootprintBenchmark {
+
+	static String[] firsts = {"Ali","Anna","Enrica","Giorgio","Luca","Lucia","Mario","Miriam","Paola","Xavier"};
+	static String[] lasts = {"Abaco","Draghi","Letto","Melone","Mattei","Russo","Neri","Rossi","Verdi","Xavier"};
+
+	public static void main(String[] args) {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+		long objects = footprint(n, false);
+		long compact = footprint(n, true);
+		System.out.printf("people: %d%n", n);
+		System.out.printf("object store:   %6.1f bytes/person%n", 1.0 * objects / n);
+		System.out.printf("columnar store: %6.1f bytes/person%n", 1.0 * compact / n);
+		System.out.printf("reduction:      %6.2fx%n", 1.0 * objects / compact);
+	}
+
+	private static long footprint(int n, boolean compact) {
+		long before = usedHeap();
+		Vaccines vs = new Vaccines(compact);
+		vs.setAgeIntervals(30, 40, 50, 60, 70);
+		Random rg = new Random(1971);
+		for (int i = 0; i < n; i++) {
+			// names are built as when read from a file, so they are not shared
+			String first = new String(firsts[rg.nextInt(firsts.length)]);
+			String last = new String(lasts[rg.nextInt(lasts.length)]);
+			vs.addPerson(first, last, ssn(i), 1922 + rg.nextInt(100));
+		}
+		vs.getInInterval("[70,+)");
+		long used = usedHeap() - before;
+		if (vs.countPeople() != n) {
+			throw new IllegalStateException();
+		}
+		return used;
+	}
+
+	static String ssn(int i) {
+		StringBuilder sb = new StringBuilder("RSSMRA00A01H");
+		String s = Integer.toString(i, 36).toUpperCase();
+		for (int k = s.length(); k < 4; k++) {
+			sb.append('0');
+		}
+		return sb.append(s).toString();
+	}
+
+	private static long usedHeap() {
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+}
@@ -0,0 +1,215 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import it.polito.oop.vaccination.VaccineException;
+import it.polito.oop.vaccination.Vaccines;
+
+/**
+ * Measures the main operations of {@link Vaccines} on synthetic registries:
+ * loading people from a CSV file, retrieving the people in the age intervals,
+ * allocating a day and a week, and the allocation statistics.
+ * <p>
+ * For each operation the benchmark reports the average time, the throughput
+ * and the memory allocated by the measuring thread, per operation and per
+ * second, so that regressions in speed and in garbage are both visible.
+ * Operations that change the allocation are preceded by an untimed
+ * {@link Vaccines#clearAllocation}.
+ * <p>
+ * Usage: {@code java -Xmx16g VaccinesBenchmark [key=value]...} with keys:
+ * <ul>
+ * <li>{@code people}: comma separated population sizes (default {@code 10000,1000000,10000000})</li>
+ * <li>{@code hubs}: number of hubs (default 20)</li>
+ * <li>{@code breaks}: comma separated interval breaks (default {@code 30,40,50,60,70})</li>
+ * <li>{@code bench}: comma separated operations to run (default all)</li>
+ * <li>{@code warmup}, {@code iterations}: iterations of about one second each (default 3 and 5)</li>
+ * <li>{@code compact}: whether to use the columnar store (default false)</li>
+ * </ul>
+ */
+public final class VaccinesBenchmark {
+
+	static final String[] BENCHMARKS = {
+		"loadPeople", "getInInterval", "allocate", "weekAllocate", "propAllocatedAge", "distributionAllocated"
+	};
+
+	static final String[] FIRSTS = {"Ali","Anna","Enrica","Giorgio","Luca","Lucia","Mario","Miriam","Paola","Xavier"};
+	static final String[] LASTS = {"Abaco","Draghi","Letto","Melone","Mattei","Russo","Neri","Rossi","Verdi","Xavier"};
+
+	/** results are folded here so that the operations cannot be optimized away */
+	static int sink;
+
+	private final Map<String, String> options = new LinkedHashMap<>();
+
+	/**
+	 * An operation to measure.
+	 */
+	interface Op {
+		Object run() throws Exception;
+	}
+
+	public static void main(String[] args) throws Exception {
+		VaccinesBenchmark b = new VaccinesBenchmark();
+		for (String a : args) {
+			int eq = a.indexOf('=');
+			if (eq < 0) {
+				throw new IllegalArgumentException("expected key=value: " + a);
+			}
+			b.options.put(a.substring(0, eq), a.substring(eq + 1));
+		}
+		b.run();
+	}
+
+	private void run() throws Exception {
+		int[] sizes = ints(option("people", "10000,1000000,10000000"));
+		int hubs = Integer.parseInt(option("hubs", "20"));
+		int[] breaks = ints(option("breaks", "30,40,50,60,70"));
+		List<String> benchmarks = Arrays.asList(option("bench", String.join(",", BENCHMARKS)).split(","));
+		System.out.printf("%-22s %10s %14s %14s %14s %12s%n",
+				"benchmark", "people", "us/op", "ops/s", "bytes/op", "MB/s");
+		for (int n : sizes) {
+			Path csv = Files.createTempFile("people", ".csv");
+			try {
+				writePeople(csv, n);
+				Vaccines vs = registry(csv, hubs, breaks);
+				Collection<String> intervals = vs.getAgeIntervals();
+				List<String> hubNames = new ArrayList<>(vs.getHubs());
+				for (String name : benchmarks) {
+					switch (name) {
+					case "loadPeople":
+						measure(name, n, null, () -> new Vaccines(compact()).loadPeople(csv));
+						break;
+					case "getInInterval":
+						measure(name, n, null, () -> {
+							int c = 0;
+							for (String i : intervals) {
+								c += vs.getInInterval(i).size();
+							}
+							return c;
+						});
+						break;
+					case "allocate":
+						measure(name, n, vs::clearAllocation, () -> {
+							int c = 0;
+							for (String h : hubNames) {
+								c += vs.allocate(h, 0).size();
+							}
+							return c;
+						});
+						break;
+					case "weekAllocate":
+						measure(name, n, vs::clearAllocation, vs::weekAllocate);
+						break;
+					case "propAllocatedAge":
+						vs.clearAllocation();
+						vs.weekAllocate();
+						measure(name, n, null, vs::propAllocatedAge);
+						break;
+					case "distributionAllocated":
+						vs.clearAllocation();
+						vs.weekAllocate();
+						measure(name, n, null, vs::distributionAllocated);
+						break;
+					default:
+						throw new IllegalArgumentException("unknown benchmark: " + name);
+					}
+				}
+			} finally {
+				Files.delete(csv);
+			}
+		}
+		if (sink == 42) {
+			System.out.println();
+		}
+	}
+
+	/**
+	 * Runs an operation for the warmup and measured iterations,
+	 * each lasting about one second and at least one operation.
+	 */
+	private void measure(String name, int n, Runnable before, Op op) throws Exception {
+		int warmup = Integer.parseInt(option("warmup", "3"));
+		int iterations = Integer.parseInt(option("iterations", "5"));
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long id = Thread.currentThread().getId();
+		long ops = 0;
+		long time = 0;
+		long bytes = 0;
+		for (int it = 0; it < warmup + iterations; it++) {
+			long itTime = 0;
+			do {
+				if (before != null) {
+					before.run();
+				}
+				long allocated = threads.getThreadAllocatedBytes(id);
+				long start = System.nanoTime();
+				Object res = op.run();
+				long end = System.nanoTime();
+				long garbage = threads.getThreadAllocatedBytes(id) - allocated;
+				sink += System.identityHashCode(res);
+				itTime += end - start;
+				if (it >= warmup) {
+					ops++;
+					time += end - start;
+					bytes += garbage;
+				}
+			} while (itTime < 1_000_000_000L);
+		}
+		System.out.printf("%-22s %10d %14.1f %14.1f %14d %12.1f%n", name, n,
+				time / 1e3 / ops, ops * 1e9 / time, bytes / ops, bytes / 1048576.0 / (time / 1e9));
+	}
+
+	private Vaccines registry(Path csv, int hubs, int[] breaks) throws IOException, VaccineException {
+		Vaccines vs = new Vaccines(compact());
+		vs.loadPeople(csv);
+		vs.setAgeIntervals(breaks);
+		Random rg = new Random(1971);
+		for (int h = 0; h < hubs; h++) {
+			vs.defineHub("Hub" + h);
+			vs.setStaff("Hub" + h, 1 + rg.nextInt(20), 1 + rg.nextInt(20), 1 + rg.nextInt(10));
+		}
+		vs.setHours(12, 12, 12, 12, 12, 8, 4);
+		return vs;
+	}
+
+	/**
+	 * Writes a CSV file of people with ages uniformly distributed up to 100 years.
+	 */
+	static void writePeople(Path csv, int n) throws IOException {
+		Random rg = new Random(1971);
+		try (BufferedWriter w = Files.newBufferedWriter(csv, StandardCharsets.UTF_8)) {
+			w.write("SSN,LAST,FIRST,YEAR\n");
+			for (int i = 0; i < n; i++) {
+				w.write(FootprintBenchmark.ssn(i));
+				w.write(',');
+				w.write(LASTS[rg.nextInt(LASTS.length)]);
+				w.write(',');
+				w.write(FIRSTS[rg.nextInt(FIRSTS.length)]);
+				w.write(',');
+				w.write(Integer.toString(Vaccines.CURRENT_YEAR - rg.nextInt(100)));
+				w.write('\n');
+			}
+		}
+	}
+
+	private boolean compact() {
+		return Boolean.parseBoolean(option("compact", "false"));
+	}
+
+	private String option(String key, String def) {
+		return options.getOrDefault(key, def);
+	}
+
+	private static int[] ints(String s) {
+		return Arrays.stream(s.split(",")).mapToInt(Integer::parseInt).toArray();
+	}
+}
@@ -0,0 +1,54 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.BitSet;
+
+import org.junit.Test;
+
+import it.polito.oop.vaccination.VaccineException;
+import it.polito.oop.vaccination.Vaccines;
+
+public final class TestAddPeople {
+
+    @Test
+    public void testDuplicates() throws VaccineException {
+    	for (boolean compact : new boolean[] {false, true}) {
+    		Vaccines v = new Vaccines(compact);
+    		v.addPerson("Old", "Person", "S0", 1950);
+    		String[] ssns = {"S1", "S0", "S2", "S1", "S3", "S2", "S1"};
+    		String[] first = new String[ssns.length];
+    		String[] last = new String[ssns.length];
+    		int[] years = new int[ssns.length];
+    		for (int i = 0; i < ssns.length; i++) {
+    			first[i] = "First" + i;
+    			last[i] = "Last" + i;
+    			years[i] = 1940 + i;
+    		}
+    		BitSet rejected = v.addPeople(first, last, ssns, years);
+    		BitSet expected = new BitSet();
+    		// already present, then repeated within the call
+    		expected.set(1);
+    		expected.set(3);
+    		expected.set(5);
+    		expected.set(6);
+    		assertEquals(expected, rejected);
+    		assertEquals(4, v.countPeople());
+    		assertEquals("The first record of an SSN is kept", "S1,Last0,First0", v.getPerson("S1"));
+    		assertEquals("S2,Last2,First2", v.getPerson("S2"));
+    		assertEquals("S0,Person,Old", v.getPerson("S0"));
+    		assertEquals("Nothing left to reject", 0, v.addPeople(new String[] {"X"}, new String[] {"Y"},
+    				new String[] {"S4"}, new int[] {2000}).cardinality());
+    	}
+    }
+
+    @Test
+    public void testLengths() {
+    	Vaccines v = new Vaccines();
+    	try {
+    		v.addPeople(new String[1], new String[1], new String[2], new int[1]);
+    		fail("Arrays of different lengths accepted");
+    	} catch (VaccineException e) {
+    		assertEquals(0, v.countPeople());
+    	}
+    }
+}
@@ -0,0 +1,111 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import it.polito.oop.vaccination.AllocationExporter;
+import it.polito.oop.vaccination.VaccineException;
+import it.polito.oop.vaccination.Vaccines;
+
+public final class TestAllocationExporter {
+
+    private static final String HEADER = "HUB,DAY,SLOT,SSN";
+    private static final int PEOPLE = 3000;
+
+    private static String ssn(int i) {
+    	return String.format("E%05d", i);
+    }
+
+    private static Vaccines create() throws VaccineException {
+    	Vaccines v = new Vaccines();
+    	for (int i = 0; i < PEOPLE; i++) {
+    		v.addPerson("First" + i, "Last" + i, ssn(i), 1925 + i % 95);
+    	}
+    	v.setAgeIntervals(30, 50, 70);
+    	for (int h = 0; h < 3; h++) {
+    		v.defineHub("Hub " + h);
+    		v.setStaff("Hub " + h, 1 + h, 2, 1);
+    	}
+    	v.setHours(4, 4, 4, 4, 4, 2, 0);
+    	return v;
+    }
+
+    @Test
+    public void testExport() throws Exception {
+    	Vaccines v = create();
+    	AllocationExporter ex = v.exporter();
+    	assertTrue(v.book("Hub 2", 5, ssn(94)));
+    	List<Map<String, List<String>>> week = v.weekAllocate();
+    	Map<String, String> expected = new HashMap<>();
+    	for (int d = 0; d < 7; d++) {
+    		for (Map.Entry<String, List<String>> hub : week.get(d).entrySet()) {
+    			for (String ssn : hub.getValue()) {
+    				expected.put(ssn, hub.getKey() + "," + d);
+    			}
+    		}
+    	}
+    	expected.put(ssn(94), "Hub 2,5");
+    	assertExported(v, ex, expected);
+
+    	// the exporter follows the changes of the allocation
+    	v.clearAllocation();
+    	expected.clear();
+    	for (String ssn : v.allocate("Hub 1", 3)) {
+    		expected.put(ssn, "Hub 1,3");
+    	}
+    	assertExported(v, ex, expected);
+    }
+
+    /**
+     * Checks the whole export against the expected hub and day of each person,
+     * and the export of each hub and day against the whole one.
+     */
+    private static void assertExported(Vaccines v, AllocationExporter ex, Map<String, String> expected) throws Exception {
+    	ByteArrayOutputStream out = new ByteArrayOutputStream();
+    	assertEquals(expected.size(), ex.export(Channels.newChannel(out)));
+    	List<String> lines = lines(out);
+    	Map<String, String> exported = new HashMap<>();
+    	Map<String, Integer> occupancy = new HashMap<>();
+    	for (String line : lines) {
+    		String[] f = line.split(",");
+    		exported.put(f[3], f[0] + "," + f[1]);
+    		occupancy.merge(f[0] + "," + f[1] + "," + f[2], 1, Integer::sum);
+    	}
+    	assertEquals(expected, exported);
+    	for (String hub : v.getHubs()) {
+    		for (int d = 0; d < 7; d++) {
+    			List<String> daily = new ArrayList<>();
+    			for (String line : lines) {
+    				if (line.startsWith(hub + "," + d + ",")) {
+    					daily.add(line);
+    				}
+    			}
+    			// registration order within each slot, as the whole export
+    			daily.sort(Comparator.comparing(line -> line.split(",")[2]));
+    			ByteArrayOutputStream o = new ByteArrayOutputStream();
+    			assertEquals(daily.size(), ex.export(Channels.newChannel(o), hub, d));
+    			assertEquals("Export of " + hub + " on " + d, daily, lines(o));
+    			for (String slot : v.getHours().get(d)) {
+    				assertEquals(v.getSlotOccupancy(hub, d, slot),
+    						(int) occupancy.getOrDefault(hub + "," + d + "," + slot, 0));
+    			}
+    		}
+    	}
+    }
+
+    private static List<String> lines(ByteArrayOutputStream out) {
+    	List<String> lines = new ArrayList<>(Arrays.asList(new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n")));
+    	assertEquals(HEADER, lines.remove(0));
+    	return lines;
+    }
+}
@@ -0,0 +1,131 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+
+import it.polito.oop.vaccination.AllocationEvent;
+import it.polito.oop.vaccination.AllocationFeed;
+import it.polito.oop.vaccination.VaccineException;
+import it.polito.oop.vaccination.Vaccines;
+
+public final class TestAllocationFeed {
+
+    private static final int PEOPLE = 3000;
+
+    private static Vaccines create() throws VaccineException {
+    	Vaccines v = new Vaccines();
+    	for (int i = 0; i < PEOPLE; i++) {
+    		v.addPerson("First" + i, "Last" + i, String.format("SSN%05d", i), 1925 + i % 95);
+    	}
+    	v.setAgeIntervals(30, 50, 70);
+    	for (int h = 0; h < 3; h++) {
+    		v.defineHub("Hub " + h);
+    		v.setStaff("Hub " + h, 1 + h, 2, 1);
+    	}
+    	v.setHours(4, 4, 4, 4, 4, 2, 0);
+    	return v;
+    }
+
+    @Test
+    public void testDeliveredDuringWeek() throws Exception {
+    	Vaccines v = create();
+    	AllocationFeed f = v.subscribe(4);
+    	ExecutorService pool = Executors.newSingleThreadExecutor();
+    	try {
+    		Future<List<Map<String, List<String>>>> week = pool.submit(v::weekAllocate);
+    		AllocationEvent first = f.poll(10, TimeUnit.SECONDS);
+    		assertEquals("Hub 0", first.getHub());
+    		assertEquals(0, first.getDay());
+    		// the allocation waits for the consumer, the last hub and day have no slots yet
+    		String slot = v.getHours().get(5).get(0);
+    		assertEquals("Last day allocated before delivery", 0, v.getSlotOccupancy("Hub 2", 5, slot));
+    		int n = 1;
+    		for (;;) {
+    			if (f.poll(10, TimeUnit.MILLISECONDS) != null) {
+    				n++;
+    			} else if (week.isDone()) {
+    				n += f.drainTo(new ArrayList<>(), Integer.MAX_VALUE);
+    				break;
+    			}
+    		}
+    		assertTrue(v.getSlotOccupancy("Hub 2", 5, slot) > 0);
+    		int expected = 0;
+    		for (Map<String, List<String>> day : week.get()) {
+    			for (List<String> ssns : day.values()) {
+    				expected += ssns.size();
+    			}
+    		}
+    		assertEquals(expected, n);
+    	} finally {
+    		f.close();
+    		pool.shutdown();
+    	}
+    }
+
+    @Test
+    public void testFullFeed() throws Exception {
+    	Vaccines v = create();
+    	AllocationFeed f = v.subscribe(1);
+    	ExecutorService pool = Executors.newSingleThreadExecutor();
+    	try {
+    		Future<List<Map<String, List<String>>>> week = pool.submit(v::weekAllocate);
+    		// the feed is full before the consumer starts on the common pool
+    		Thread.sleep(200);
+    		CompletableFuture<Integer> total = new CompletableFuture<>();
+    		CompletableFuture<List<AllocationEvent>> consumer = CompletableFuture.supplyAsync(() -> {
+    			List<AllocationEvent> res = new ArrayList<>();
+    			try {
+    				while (!total.isDone() || res.size() < total.join()) {
+    					AllocationEvent e = f.poll(50, TimeUnit.MILLISECONDS);
+    					if (e != null) {
+    						res.add(e);
+    						// the system can be queried while the allocation is delivered
+    						v.getSlotOccupancy(e.getHub(), e.getDay(), v.getHours().get(e.getDay()).get(0));
+    					}
+    				}
+    			} catch (Exception e) {
+    				throw new IllegalStateException(e);
+    			}
+    			return res;
+    		});
+    		List<Map<String, List<String>>> allocation;
+    		try {
+    			allocation = week.get(10, TimeUnit.SECONDS);
+    		} catch (TimeoutException e) {
+    			f.close();
+    			total.complete(0);
+    			fail("The allocation waits for a consumer that cannot run");
+    			return;
+    		}
+    		Map<String, String> expected = new HashMap<>();
+    		for (int d = 0; d < 7; d++) {
+    			for (Map.Entry<String, List<String>> hub : allocation.get(d).entrySet()) {
+    				for (String ssn : hub.getValue()) {
+    					expected.put(ssn, hub.getKey() + " " + d);
+    				}
+    			}
+    		}
+    		total.complete(expected.size());
+    		Map<String, String> delivered = new HashMap<>();
+    		for (AllocationEvent e : consumer.get(10, TimeUnit.SECONDS)) {
+    			delivered.put(e.getSsn(), e.getHub() + " " + e.getDay());
+    		}
+    		assertEquals(expected, delivered);
+    	} finally {
+    		f.close();
+    		pool.shutdown();
+    	}
+    }
+}
@@ -0,0 +1,111 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import it.polito.oop.vaccination.VaccineException;
+import it.polito.oop.vaccination.Vaccines;
+
+public final class TestBooking {
+
+    private static final int PEOPLE = 1000;
+
+    private static Vaccines create(int hubs) throws VaccineException {
+    	Vaccines v = new Vaccines();
+    	for (int i = 0; i < PEOPLE; i++) {
+    		v.addPerson("First" + i, "Last" + i, ssn(i), 1930 + i % 90);
+    	}
+    	v.setAgeIntervals(30, 50, 70);
+    	for (int h = 0; h < hubs; h++) {
+    		v.defineHub("H" + h);
+    		v.setStaff("H" + h, 1, 1, 1);
+    	}
+    	v.setHours(1, 1, 1, 1, 1, 1, 1);
+    	return v;
+    }
+
+    @Test
+    public void testBookAfterAllocate() throws VaccineException {
+    	Vaccines v = create(1);
+    	assertEquals(10, (int) v.getAvailable().get("H0").get(0));
+    	List<String> allocated = v.allocate("H0", 0);
+    	assertEquals(10, allocated.size());
+    	String other = null;
+    	for (int i = 0; i < PEOPLE; i++) {
+    		if (!allocated.contains(ssn(i))) {
+    			assertFalse("Booked on a full day", v.book("H0", 0, ssn(i)));
+    			other = ssn(i);
+    		}
+    	}
+    	assertTrue("Allocated twice on a full day", v.allocate("H0", 0).isEmpty());
+    	assertTrue("Other days are not affected", v.book("H0", 1, other));
+    	assertEquals(11.0 / PEOPLE, v.propAllocated(), 1e-9);
+
+    	v.clearAllocation();
+    	assertTrue(v.book("H0", 0, ssn(0)));
+    	assertEquals("Bookings reduce the allocation", 9, v.allocate("H0", 0).size());
+    	assertTrue("The week has no places left on the first day", v.weekAllocate().get(0).get("H0").isEmpty());
+    }
+
+    @Test
+    public void testSlotsAfterStaffing() throws VaccineException {
+    	Vaccines v = create(1);
+    	v.setHours(2, 2, 2, 2, 2, 2, 2);
+    	v.setStaff("H0", 4, 4, 2);
+    	for (int i = 0; i < 17; i++) {
+    		assertTrue(v.book("H0", 0, ssn(i)));
+    	}
+    	// with less staff some slots are full and leave the queue
+    	v.setStaff("H0", 1, 1, 1);
+    	assertEquals(3, v.allocate("H0", 0).size());
+    	v.setStaff("H0", 4, 4, 2);
+    	assertEquals(60, v.allocate("H0", 0).size());
+    	for (String slot : v.getHours().get(0)) {
+    		assertEquals("Slot not refilled " + slot, 10, v.getSlotOccupancy("H0", 0, slot));
+    	}
+    }
+
+    @Test
+    public void testConcurrentAllocations() throws Exception {
+    	Vaccines v = create(4);
+    	ExecutorService pool = Executors.newFixedThreadPool(8);
+    	try {
+    		List<Future<Integer>> results = new ArrayList<>();
+    		for (int t = 0; t < 64; t++) {
+    			int k = t;
+    			results.add(pool.submit((Callable<Integer>) () -> {
+    				int n = 0;
+    				for (int d = 0; d < 7; d++) {
+    					if (k % 2 == 0) {
+    						n += v.allocate("H" + k % 4, d).size();
+    					} else if (v.book("H" + k % 4, d, ssn(k * 7 + d))) {
+    						n++;
+    					}
+    				}
+    				return n;
+    			}));
+    		}
+    		int total = 0;
+    		for (Future<Integer> f : results) {
+    			total += f.get();
+    		}
+    		// a place given back by a failed booking may remain free
+    		assertTrue("Capacity exceeded " + total, total <= 4 * 7 * 10 && total > 4 * 7 * 10 - 32);
+    		assertEquals((double) total / PEOPLE, v.propAllocated(), 1e-9);
+    	} finally {
+    		pool.shutdown();
+    	}
+    }
+
+    private static String ssn(int i) {
+    	return String.format("SSN%05d", i);
+    }
+}
@@ -0,0 +1,31 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import it.polito.oop.vaccination.Vaccines;
+
+public final class TestCompactStore {
+
+    private static final int[] YEARS = {1950, 2021, 0, -1, Short.MAX_VALUE, Short.MIN_VALUE,
+    		Short.MIN_VALUE + 1, 40000, -40000, 1000000, -1000000};
+
+    @Test
+    public void testSameAsObjects() {
+    	Vaccines objects = new Vaccines(false);
+    	Vaccines compact = new Vaccines(true);
+    	for (int i = 0; i < YEARS.length; i++) {
+    		String ssn = i % 2 == 0 ? "RSSMRA50A01H50" + i : "not packable è " + i;
+    		assertTrue(objects.addPerson("Mario", "Rossi", ssn, YEARS[i]));
+    		assertTrue(compact.addPerson("Mario", "Rossi", ssn, YEARS[i]));
+    		assertEquals("Wrong age for year " + YEARS[i], Vaccines.CURRENT_YEAR - YEARS[i], compact.getAge(ssn));
+    		assertEquals(objects.getAge(ssn), compact.getAge(ssn));
+    		assertEquals(objects.getPerson(ssn), compact.getPerson(ssn));
+    	}
+    	objects.setAgeIntervals(30, 60);
+    	compact.setAgeIntervals(30, 60);
+    	for (String range : objects.getAgeIntervals()) {
+    		assertEquals(objects.getInInterval(range), compact.getInInterval(range));
+    	}
+    }
+}
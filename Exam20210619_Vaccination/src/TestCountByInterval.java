@@ -0,0 +1,65 @@
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import it.polito.oop.vaccination.VaccineException;
+import it.polito.oop.vaccination.Vaccines;
+
+public final class TestCountByInterval {
+
+    private static final int PEOPLE = 3000;
+
+    private static void addPeople(Vaccines v, int from, int to) {
+    	for (int i = from; i < to; i++) {
+    		// some born in the current year, some far beyond the last break
+    		v.addPerson("First" + i, "Last" + i, String.format("C%05d", i), Vaccines.CURRENT_YEAR - i * 13 % 120);
+    	}
+    }
+
+    private static void assertCounts(Vaccines v, int people) {
+    	List<String> labels = new ArrayList<>(v.getAgeIntervals());
+    	int[] counts = v.countByInterval();
+    	assertEquals(labels.size(), counts.length);
+    	// the intervals of the ages, from the labels
+    	int[] ages = new int[counts.length];
+    	for (int i = 0; i < people; i++) {
+    		int age = v.getAge(String.format("C%05d", i));
+    		for (int k = labels.size() - 1; k >= 0; k--) {
+    			String label = labels.get(k);
+    			if (age >= Integer.parseInt(label.substring(1, label.indexOf(',')))) {
+    				ages[k]++;
+    				break;
+    			}
+    		}
+    	}
+    	for (int i = 0; i < counts.length; i++) {
+    		assertEquals(labels.get(i), v.getInInterval(labels.get(i)).size(), counts[i]);
+    		assertEquals(labels.get(i), ages[i], counts[i]);
+    	}
+    }
+
+    @Test
+    public void testCounts() throws VaccineException {
+    	for (boolean compact : new boolean[] {false, true}) {
+    		Vaccines v = new Vaccines(compact);
+    		addPeople(v, 0, PEOPLE / 2);
+    		assertCounts(v, PEOPLE / 2);
+    		v.setAgeIntervals(30, 50, 70);
+    		assertCounts(v, PEOPLE / 2);
+    		// people added after the intervals are classified when added
+    		addPeople(v, PEOPLE / 2, PEOPLE);
+    		assertCounts(v, PEOPLE);
+    		// a new break splits an interval
+    		v.setAgeIntervals(10, 60);
+    		assertEquals(6, v.countByInterval().length);
+    		assertCounts(v, PEOPLE);
+    		// repeated people are not counted again
+    		addPeople(v, 0, 10);
+    		assertEquals(PEOPLE, v.countPeople());
+    		assertCounts(v, PEOPLE);
+    	}
+    }
+}
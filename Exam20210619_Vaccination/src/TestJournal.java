@@ -0,0 +1,197 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import it.polito.oop.vaccination.VaccineException;
+import it.polito.oop.vaccination.Vaccines;
+
+public final class TestJournal {
+
+    private static final int PEOPLE = 3000;
+
+    private Path dir;
+    private Path snapshot;
+    private Path journal;
+
+    @Before
+    public void setUp() throws IOException {
+    	dir = Files.createTempDirectory("journal");
+    	snapshot = dir.resolve("state.snap");
+    	journal = dir.resolve("state.wal");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+    	try (java.util.stream.Stream<Path> files = Files.list(dir)) {
+    		for (Path p : (Iterable<Path>) files::iterator) {
+    			Files.delete(p);
+    		}
+    	}
+    	Files.delete(dir);
+    }
+
+    private static String ssn(int i) {
+    	return String.format("J%05d", i);
+    }
+
+    private static Vaccines create(boolean compact) throws VaccineException {
+    	Vaccines v = new Vaccines(compact);
+    	for (int i = 0; i < PEOPLE; i++) {
+    		v.addPerson("First" + i, "Last" + i, ssn(i), 1925 + i % 95);
+    	}
+    	v.setAgeIntervals(30, 50, 70);
+    	for (int h = 0; h < 3; h++) {
+    		v.defineHub("Hub " + h);
+    		v.setStaff("Hub " + h, 1 + h, 2, 1);
+    	}
+    	v.setHours(4, 4, 4, 4, 4, 2, 0);
+    	return v;
+    }
+
+    /**
+     * Checks that two systems have the same people and allocation.
+     */
+    private static void assertSameAllocation(Vaccines v, Vaccines w) throws VaccineException {
+    	assertEquals(v.countPeople(), w.countPeople());
+    	for (String range : v.getAgeIntervals()) {
+    		assertEquals(v.getInInterval(range), w.getInInterval(range));
+    	}
+    	assertEquals(v.getAvailable(), w.getAvailable());
+    	assertEquals(v.distributionAllocated(), w.distributionAllocated());
+    	List<Integer> vo = new ArrayList<>();
+    	List<Integer> wo = new ArrayList<>();
+    	for (String h : v.getHubs()) {
+    		for (int d = 0; d < 7; d++) {
+    			for (String slot : v.getHours().get(d)) {
+    				vo.add(v.getSlotOccupancy(h, d, slot));
+    				wo.add(w.getSlotOccupancy(h, d, slot));
+    			}
+    		}
+    	}
+    	assertEquals("Different slot occupancy", vo, wo);
+    }
+
+    /**
+     * Changes the allocation after the snapshot, with all the kinds of records;
+     * people are booked among the youngest, not allocated yet.
+     */
+    private static void change(Vaccines v) throws Exception {
+    	assertTrue(v.book("Hub 0", 0, ssn(94)));
+    	v.allocate("Hub 1", 1);
+    	v.weekAllocate();
+    	v.clearAllocation();
+    	v.allocate("Hub 2", 4);
+    	assertTrue(v.book("Hub 1", 5, ssn(189)));
+    }
+
+    @Test
+    public void testReplay() throws Exception {
+    	for (boolean compact : new boolean[] {false, true}) {
+    		Vaccines v = create(compact);
+    		v.openJournal(journal, 16);
+    		v.allocate("Hub 0", 2);
+    		v.saveSnapshot(snapshot);
+    		assertEquals("The snapshot empties the journal", 0, Files.size(journal));
+    		change(v);
+    		v.closeJournal();
+
+    		Vaccines w = new Vaccines(!compact);
+    		w.loadSnapshot(snapshot);
+    		assertTrue(w.replayJournal(journal) > 0);
+    		assertSameAllocation(v, w);
+    		assertEquals("Allocation should continue from the same state", v.weekAllocate(), w.weekAllocate());
+    		Files.delete(journal);
+    	}
+    }
+
+    @Test
+    public void testTruncatedFrame() throws Exception {
+    	Vaccines v = create(false);
+    	v.saveSnapshot(snapshot);
+    	v.openJournal(journal, 0);
+    	v.allocate("Hub 0", 1);
+    	v.closeJournal();
+    	Vaccines first = new Vaccines();
+    	first.loadSnapshot(snapshot);
+    	long n = first.replayJournal(journal);
+    	long size = Files.size(journal);
+
+    	v.openJournal(journal, 0);
+    	v.allocate("Hub 2", 3);
+    	v.closeJournal();
+    	byte[] data = Files.readAllBytes(journal);
+    	for (int cut : new int[] {1, 7, (int) (data.length - size) - 1}) {
+    		Files.write(journal, Arrays.copyOf(data, data.length - cut));
+    		Vaccines w = new Vaccines();
+    		w.loadSnapshot(snapshot);
+    		assertEquals("The last frame should be ignored", n, w.replayJournal(journal));
+    		assertSameAllocation(first, w);
+    	}
+    }
+
+    @Test
+    public void testInvalidRecords() throws Exception {
+    	Vaccines v = create(false);
+    	v.saveSnapshot(snapshot);
+    	// records of hub, day, slot and person, the invalid ones are skipped
+    	int[][] records = {{-1, 1, 0, 94}, {3, 1, 0, 94}, {0, -1, 0, 94}, {0, 7, 0, 94},
+    			{0, 1, 0, -1}, {0, 1, 0, PEOPLE}, {0, 1, -3, 189}, {0, 1, 0, 94}};
+    	ByteBuffer batch = ByteBuffer.allocate(records.length * 11);
+    	for (int[] r : records) {
+    		batch.put((byte) 2).putInt(r[0]).put((byte) r[1]).put((byte) r[2]).putInt(r[3]);
+    	}
+    	CRC32 crc = new CRC32();
+    	crc.update(batch.array());
+    	ByteBuffer data = ByteBuffer.allocate(8 + batch.capacity());
+    	data.putInt(batch.capacity()).putInt((int) crc.getValue()).put(batch.array());
+    	Files.write(journal, data.array());
+
+    	Vaccines w = new Vaccines();
+    	w.loadSnapshot(snapshot);
+    	assertEquals(records.length, w.replayJournal(journal));
+    	assertEquals(2.0 / PEOPLE, w.propAllocated(), 1e-9);
+    	assertEquals("A negative slot is no slot", 1, w.getSlotOccupancy("Hub 0", 1, w.getHours().get(1).get(0)));
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+    	Path full = Paths.get("/dev/full");
+    	if (!Files.isWritable(full)) {
+    		return;
+    	}
+    	Vaccines v = create(false);
+    	v.openJournal(full, 0);
+    	int places = v.getAvailable().get("Hub 0").get(1);
+    	assertEquals("The operation completes anyway", places, v.allocate("Hub 0", 1).size());
+    	try {
+    		v.saveSnapshot(snapshot);
+    		fail("Journal failure not reported");
+    	} catch (IOException e) {
+    		assertTrue(!Files.exists(snapshot));
+    	}
+    	try {
+    		v.closeJournal();
+    		fail("Journal failure not reported");
+    	} catch (IOException e) {
+    		// expected
+    	}
+    	v.saveSnapshot(snapshot);
+    	Vaccines w = new Vaccines();
+    	w.loadSnapshot(snapshot);
+    	assertSameAllocation(v, w);
+    }
+}
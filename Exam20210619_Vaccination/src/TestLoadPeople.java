@@ -0,0 +1,140 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import it.polito.oop.vaccination.VaccineException;
+import it.polito.oop.vaccination.Vaccines;
+
+public final class TestLoadPeople {
+
+    private static final int LINES = 90000;
+
+    @Test
+    public void testParallelAsSequential() throws Exception {
+    	Path file = Files.createTempFile("people", ".csv");
+    	try {
+    		StringBuilder csv = new StringBuilder("SSN,LAST,FIRST,YEAR\n");
+    		for (int i = 1; i < LINES; i++) {
+    			if (i % 31 == 0) {
+    				// duplicate of a line far before, likely in another chunk
+    				csv.append(ssn(earlier(i))).append(",Dup,Dup").append(i).append(',')
+    					.append(i % 2 == 0 ? "19x0" : "1960").append('\n');
+    			} else if (i % 97 == 0) {
+    				csv.append("BAD").append(i).append(",Rossi\n");
+    			} else if (i % 89 == 0) {
+    				csv.append("EMP").append(i).append(",,Mario,1950\r\n");
+    			} else {
+    				csv.append(ssn(i)).append(",Last").append(i).append(",First").append(i).append(',')
+    					.append(1920 + i % 100).append(i % 3 == 0 ? "\r\n" : "\n");
+    			}
+    		}
+    		Files.write(file, csv.toString().getBytes(StandardCharsets.UTF_8));
+    		assertTrue("The file should be split in several chunks", Files.size(file) > 3 << 20);
+
+    		Vaccines seq = new Vaccines();
+    		List<String> seqErrors = new ArrayList<>();
+    		seq.setLoadListener((n, line) -> seqErrors.add(n + ":" + line));
+    		Vaccines par = new Vaccines();
+    		List<String> parErrors = new ArrayList<>();
+    		par.setLoadListener((n, line) -> parErrors.add(n + ":" + line));
+
+    		long added = seq.loadPeople(file);
+    		assertEquals("Wrong number of persons loaded", added, par.loadPeopleParallel(file));
+    		assertEquals(seq.countPeople(), par.countPeople());
+    		assertTrue("Duplicates and bad lines should be reported", seqErrors.size() > LINES / 40);
+    		assertEquals("Different lines reported", seqErrors, parErrors);
+    		for (int i = 1; i < LINES; i++) {
+    			if (normal(i)) {
+    				assertEquals(seq.getPerson(ssn(i)), par.getPerson(ssn(i)));
+    			}
+    		}
+    		assertEquals("The first occurrence should be kept", ssn(5) + ",Last5,First5", par.getPerson(ssn(5)));
+    	} finally {
+    		Files.delete(file);
+    	}
+    }
+
+    @Test
+    public void testMalformed() throws Exception {
+    	Path file = Files.createTempFile("people", ".csv");
+    	try (OutputStream out = Files.newOutputStream(file)) {
+    		out.write("SSN,LAST,FIRST,YEAR\nAAA,Rossi,Mario,1950\nBBB,Bianchi,".getBytes(StandardCharsets.UTF_8));
+    		out.write(new byte[] {(byte) 0xff, 'a', ',', '1', '9', '6', '0', '\n'});
+    	}
+    	try {
+    		assertTrue("Malformed content accepted sequentially", failsOnMalformed(file, false));
+    		assertTrue("Malformed content accepted in parallel", failsOnMalformed(file, true));
+    	} finally {
+    		Files.delete(file);
+    	}
+    }
+
+    @Test
+    public void testInvalidYear() throws Exception {
+    	Path file = Files.createTempFile("people", ".csv");
+    	Files.write(file, "SSN,LAST,FIRST,YEAR\nAAA,Rossi,Mario,1950\nAAA,Rossi,Mario,19x0\nBBB,Bianchi,Anna,19y0\n"
+    			.getBytes(StandardCharsets.UTF_8));
+    	try {
+    		for (boolean parallel : new boolean[] {false, true}) {
+    			Vaccines v = new Vaccines();
+    			List<String> errors = new ArrayList<>();
+    			v.setLoadListener((n, line) -> errors.add(n + ":" + line));
+    			try {
+    				if (parallel) {
+    					v.loadPeopleParallel(file);
+    				} else {
+    					v.loadPeople(file);
+    				}
+    				fail("Invalid year of a new person accepted");
+    			} catch (NumberFormatException e) {
+    				assertEquals("For input string: \"19y0\"", e.getMessage());
+    			}
+    			assertEquals("The duplicate is reported before", Arrays.asList("3:AAA,Rossi,Mario,19x0"), errors);
+    			assertEquals("AAA,Rossi,Mario", v.getPerson("AAA"));
+    		}
+    	} finally {
+    		Files.delete(file);
+    	}
+    }
+
+    private static boolean failsOnMalformed(Path file, boolean parallel) throws VaccineException {
+    	Vaccines v = new Vaccines();
+    	try {
+    		if (parallel) {
+    			v.loadPeopleParallel(file);
+    		} else {
+    			v.loadPeople(file);
+    		}
+    		return false;
+    	} catch (IOException e) {
+    		return true;
+    	}
+    }
+
+    private static boolean normal(int i) {
+    	return i % 97 != 0 && i % 89 != 0 && i % 31 != 0;
+    }
+
+    private static int earlier(int i) {
+    	int j = i / 3 + 1;
+    	while (!normal(j)) {
+    		j++;
+    	}
+    	return j;
+    }
+
+    private static String ssn(int i) {
+    	return String.format("SSN%08d", i);
+    }
+}
@@ -0,0 +1,233 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.JMException;
+import javax.management.JMX;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+import it.polito.oop.vaccination.MetricsSnapshot;
+import it.polito.oop.vaccination.VaccineException;
+import it.polito.oop.vaccination.Vaccines;
+import it.polito.oop.vaccination.VaccinesMetricsMXBean;
+
+public final class TestMetrics {
+
+    private static final int PEOPLE = 2000;
+
+    private static String ssn(int i) {
+    	return String.format("M%05d", i);
+    }
+
+    private static Vaccines create() throws VaccineException {
+    	Vaccines v = new Vaccines();
+    	for (int i = 0; i < PEOPLE; i++) {
+    		v.addPerson("First" + i, "Last" + i, ssn(i), 1925 + i * 7 % 95);
+    	}
+    	v.setAgeIntervals(30, 50, 70);
+    	for (int h = 0; h < 3; h++) {
+    		v.defineHub("Hub " + h);
+    		v.setStaff("Hub " + h, 1 + h, 2, 1);
+    	}
+    	v.setHours(4, 4, 4, 4, 4, 2, 0);
+    	return v;
+    }
+
+    /**
+     * Counts the given people in each age interval of the system.
+     */
+    private static Map<String, Long> byInterval(Vaccines v, Collection<String> ssns) {
+    	Map<String, Long> res = new LinkedHashMap<>();
+    	for (String label : v.getAgeIntervals()) {
+    		Collection<String> in = v.getInInterval(label);
+    		res.put(label, ssns.stream().filter(in::contains).count());
+    	}
+    	return res;
+    }
+
+    private static Map<String, Long> allocations(MetricsSnapshot m) {
+    	Map<String, Long> res = new LinkedHashMap<>();
+    	for (int i = 0; i < m.getIntervals(); i++) {
+    		res.put(m.getLabel(i), m.getAllocations(i));
+    	}
+    	return res;
+    }
+
+    @Test
+    public void testRows() throws Exception {
+    	Vaccines v = new Vaccines();
+    	List<Integer> reported = new ArrayList<>();
+    	v.setLoadListener((n, line) -> reported.add(n));
+    	assertEquals(3, v.loadPeople(new StringReader("SSN,LAST,FIRST,YEAR\n"
+    			+ "A1,Rossi,Mario,1950\n"
+    			+ "A1,Verdi,Luca,1960\n"
+    			+ "bad\n"
+    			+ "A2,,Anna,1970\n"
+    			+ "A3,Bianchi,Anna,1970\n"
+    			+ "A4,Neri,Carlo,1980\n")));
+    	MetricsSnapshot m = v.getMetrics();
+    	assertEquals(6, m.getRowsRead());
+    	assertEquals(3, m.getRowsRejected());
+    	assertEquals("Rejected rows are those reported", reported.size(), m.getRowsRejected());
+
+    	// the header of a failed load is reported, but it is not a row
+    	try {
+    		v.loadPeople(new StringReader("SSN,YEAR\nA5,Neri,Carlo,1980\n"));
+    		fail("Invalid header accepted");
+    	} catch (VaccineException e) {
+    		// expected
+    	}
+    	assertEquals(6, v.getMetrics().getRowsRead());
+    	assertEquals(3, v.getMetrics().getRowsRejected());
+    	assertEquals(4, reported.size());
+    	reported.clear();
+
+    	// the loads add up, whatever the way the file is read
+    	Path file = Files.createTempFile("people", ".csv");
+    	try {
+    		Files.write(file, ("SSN,LAST,FIRST,YEAR\n"
+    				+ "A4,Neri,Carlo,1980\n"
+    				+ "A5,Gialli,Piero,1940\n"
+    				+ "A6,Rosa\n").getBytes(StandardCharsets.UTF_8));
+    		assertEquals(1, v.loadPeople(file));
+    		assertEquals(0, v.loadPeopleParallel(file));
+    	} finally {
+    		Files.delete(file);
+    	}
+    	m = v.getMetrics();
+    	assertEquals(6 + 3 + 3, m.getRowsRead());
+    	assertEquals(3 + 2 + 3, m.getRowsRejected());
+    	assertEquals(2 + 3, reported.size());
+    	assertEquals(m.getRowsRead() - m.getRowsRejected(), v.countPeople());
+    }
+
+    @Test
+    public void testAllocations() throws VaccineException {
+    	Vaccines v = create();
+    	MetricsSnapshot m = v.getMetrics();
+    	assertEquals(4, m.getIntervals());
+    	for (int i = 0; i < m.getIntervals(); i++) {
+    		assertEquals(0, m.getAllocations(i));
+    	}
+
+    	List<String> allocated = new ArrayList<>();
+    	allocated.addAll(v.allocate("Hub 0", 0));
+    	allocated.addAll(v.allocate("Hub 0", 1));
+    	allocated.addAll(v.allocate("Hub 2", 0));
+    	assertEquals(byInterval(v, allocated), allocations(v.getMetrics()));
+
+    	for (int i = 0; i < PEOPLE; i++) {
+    		if (!allocated.contains(ssn(i))) {
+    			assertTrue(v.book("Hub 1", 3, ssn(i)));
+    			allocated.add(ssn(i));
+    			break;
+    		}
+    	}
+    	assertFalse("A failed booking is not counted", v.book("Hub 1", 3, allocated.get(0)));
+    	assertEquals(byInterval(v, allocated), allocations(v.getMetrics()));
+
+    	for (Map<String, List<String>> day : v.weekAllocate()) {
+    		for (List<String> ssns : day.values()) {
+    			allocated.addAll(ssns);
+    		}
+    	}
+    	assertEquals(byInterval(v, allocated), allocations(v.getMetrics()));
+
+    	// clearing keeps the counts, the allocations after it add up
+    	v.clearAllocation();
+    	allocated.addAll(v.allocate("Hub 1", 4));
+    	assertEquals(byInterval(v, allocated), allocations(v.getMetrics()));
+
+    	// a new break restarts the counts
+    	v.setAgeIntervals(60);
+    	m = v.getMetrics();
+    	assertEquals(5, m.getIntervals());
+    	for (int i = 0; i < m.getIntervals(); i++) {
+    		assertEquals(0, m.getAllocations(i));
+    	}
+    }
+
+    @Test
+    public void testLatency() throws VaccineException {
+    	Vaccines v = create();
+    	for (int d = 0; d < 5; d++) {
+    		v.allocate("Hub 0", d);
+    	}
+    	v.allocate("Hub 1", 0);
+    	v.weekAllocate();
+    	MetricsSnapshot m = v.getMetrics();
+    	assertEquals(new HashSet<>(v.getHubs()), new HashSet<>(m.getHubs()));
+    	assertEquals(5, m.getAllocateCount("Hub 0"));
+    	assertEquals(1, m.getAllocateCount("Hub 1"));
+    	assertEquals("Only allocate is timed", 0, m.getAllocateCount("Hub 2"));
+    	assertEquals(0, m.getAllocatePercentile("Hub 2", 0.5));
+    	assertEquals(0, m.getAllocateMax("Hub 2"));
+    	assertEquals(0, m.getAllocateMean("Hub 2"), 0.0);
+    	long p50 = m.getAllocatePercentile("Hub 0", 0.5);
+    	long p99 = m.getAllocatePercentile("Hub 0", 0.99);
+    	assertTrue(p50 > 0);
+    	assertTrue(p50 <= p99);
+    	assertEquals("The highest percentile is the max", m.getAllocateMax("Hub 0"), m.getAllocatePercentile("Hub 0", 1));
+    	assertTrue(m.getAllocateMean("Hub 0") <= m.getAllocateMax("Hub 0"));
+
+    	// a snapshot does not change
+    	v.allocate("Hub 0", 5);
+    	assertEquals(5, m.getAllocateCount("Hub 0"));
+    	assertEquals(6, v.getMetrics().getAllocateCount("Hub 0"));
+    }
+
+    @Test
+    public void testMBean() throws Exception {
+    	Vaccines v = create();
+    	v.loadPeople(new StringReader("SSN,LAST,FIRST,YEAR\nB1,Rossi,Mario,1950\nbad\n"));
+    	v.allocate("Hub 1", 2);
+    	MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    	ObjectName name = new ObjectName("it.polito.oop.vaccination:type=Metrics,name=TestMetrics");
+    	v.registerMetrics(name);
+    	try {
+    		assertTrue(server.isRegistered(name));
+    		assertEquals(2L, server.getAttribute(name, "RowsRead"));
+    		assertEquals(1L, server.getAttribute(name, "RowsRejected"));
+    		try {
+    			v.registerMetrics(name);
+    			fail("Registered twice with the same name");
+    		} catch (JMException e) {
+    			// expected
+    		}
+
+    		VaccinesMetricsMXBean bean = JMX.newMXBeanProxy(server, name, VaccinesMetricsMXBean.class);
+    		assertEquals(allocations(v.getMetrics()), bean.getAllocations());
+    		Map<String, Long> count = new LinkedHashMap<>();
+    		for (String h : v.getHubs()) {
+    			count.put(h, h.equals("Hub 1") ? 1L : 0L);
+    		}
+    		assertEquals(count, bean.getAllocateCount());
+    		assertEquals(v.getHubs().size(), bean.getAllocateP50().size());
+    		assertEquals("Latencies in microseconds", v.getMetrics().getAllocateMax("Hub 1") / 1000.0,
+    				bean.getAllocateMax().get("Hub 1"), 1e-9);
+
+    		// attributes are read from the current state
+    		v.allocate("Hub 1", 3);
+    		assertEquals(2L, (long) bean.getAllocateCount().get("Hub 1"));
+    	} finally {
+    		server.unregisterMBean(name);
+    	}
+    	assertFalse(server.isRegistered(name));
+    }
+}
@@ -0,0 +1,235 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import it.polito.oop.vaccination.ShardedVaccines;
+import it.polito.oop.vaccination.VaccineException;
+import it.polito.oop.vaccination.Vaccines;
+
+public final class TestShardedVaccines {
+
+    private static final int SHARDS = 8;
+
+    @Test
+    public void testShards() throws Exception {
+    	ShardedVaccines vs = new ShardedVaccines(SHARDS);
+    	StringBuilder csv = new StringBuilder("SSN,LAST,FIRST,YEAR\n");
+    	Set<String> codes = generatePersons(20000);
+    	for (String p : codes) {
+    		csv.append(p).append('\n');
+    	}
+    	csv.append("bad line\n");
+    	assertEquals("Wrong number of persons loaded", codes.size(), vs.loadPeople(new StringReader(csv.toString())));
+    	assertEquals(codes.size(), vs.countPeople());
+    	for (String p : codes) {
+    		String ssn = p.split(",")[0];
+    		assertNotNull("Missing " + ssn, vs.getPerson(ssn));
+    		assertNotNull(vs.getShard(vs.shardOf(ssn)).getPerson(ssn));
+    	}
+    	assertTrue("Duplicate accepted", !vs.addPerson("X", "Y", codes.iterator().next().split(",")[0], 1950));
+
+    	vs.setAgeIntervals(30,40,50,60,70);
+    	assertEquals(6, vs.getAgeIntervals().size());
+    	for (int h = 0; h < 2 * SHARDS; h++) {
+    		vs.defineHub("Hub " + h);
+    		vs.setStaff("Hub " + h, 1 + h % 3, 2, 1 + h % 2);
+    	}
+    	vs.setHours(4,4,4,4,4,4,4);
+    	for (int k = 0; k < SHARDS; k++) {
+    		assertEquals("Hubs should be spread among shards", 2, vs.getShard(k).getHubs().size());
+    	}
+
+    	Map<String, List<Integer>> available = vs.getAvailable();
+    	assertEquals(2 * SHARDS, available.size());
+    	assertEquals("Hub 0", available.keySet().iterator().next());
+
+    	List<Map<String, List<String>>> week = vs.weekAllocate();
+    	assertEquals(7, week.size());
+    	Set<String> allocated = new HashSet<>();
+    	for (int d = 0; d < 7; d++) {
+    		for (Map.Entry<String, List<String>> e : week.get(d).entrySet()) {
+    			assertTrue("Too many people allocated", e.getValue().size() <= available.get(e.getKey()).get(d));
+    			int shard = hubShard(vs, e.getKey());
+    			for (String ssn : e.getValue()) {
+    				assertTrue("Person allocated twice " + ssn, allocated.add(ssn));
+    				assertEquals("Person allocated out of shard", shard, vs.shardOf(ssn));
+    			}
+    		}
+    	}
+    	assertEquals(1.0 * allocated.size() / codes.size(), vs.propAllocated(), 1e-9);
+    	double total = 0;
+    	for (double p : vs.distributionAllocated().values()) {
+    		total += p;
+    	}
+    	assertEquals(1.0, total, 1e-9);
+    	assertEquals(6, vs.propAllocatedAge().size());
+
+    	vs.clearAllocation();
+    	assertEquals(0.0, vs.propAllocated(), 0.0);
+    	assertEquals("Allocation of a day", allocated.size() > 0, !vs.allocate(0).isEmpty());
+    }
+
+    @Test
+    public void testSingleShard() throws VaccineException {
+    	ShardedVaccines vs = new ShardedVaccines(1);
+    	Vaccines v = new Vaccines();
+    	for (String p : generatePersons(5000)) {
+    		String[] parts = p.split(",");
+    		int year = Integer.parseInt(parts[3]);
+    		assertTrue(vs.addPerson(parts[2], parts[1], parts[0], year));
+    		assertTrue(v.addPerson(parts[2], parts[1], parts[0], year));
+    	}
+    	vs.setAgeIntervals(40,60);
+    	v.setAgeIntervals(40,60);
+    	for (int h = 0; h < 3; h++) {
+    		vs.defineHub("Hub " + h);
+    		v.defineHub("Hub " + h);
+    		vs.setStaff("Hub " + h, 2, 3, 1);
+    		v.setStaff("Hub " + h, 2, 3, 1);
+    	}
+    	vs.setHours(8,8,8,8,8,4,0);
+    	v.setHours(8,8,8,8,8,4,0);
+    	assertEquals("A single shard should allocate as a plain system", v.weekAllocate(), vs.weekAllocate());
+    	assertEquals(v.propAllocatedAge(), vs.propAllocatedAge());
+    }
+
+    @Test
+    public void testLoadListener() throws Exception {
+    	// shards get more lines than a batch, duplicates are both within and across batches
+    	List<String> persons = new ArrayList<>(generatePersons(30000));
+    	StringBuilder csv = new StringBuilder("SSN,LAST,FIRST,YEAR\n");
+    	for (int i = 0; i < persons.size(); i++) {
+    		csv.append(persons.get(i)).append('\n');
+    		if (i % 1000 == 7) {
+    			csv.append("bad line ").append(i).append('\n');
+    		}
+    		if (i % 97 == 3) {
+    			String[] p = persons.get(i % 2 == 0 ? i : i / 3).split(",");
+    			csv.append(p[0]).append(",Other,Name,").append(p[3]).append('\n');
+    		}
+    	}
+    	Map<Integer, String> expected = new TreeMap<>();
+    	Vaccines v = new Vaccines();
+    	v.setLoadListener(expected::put);
+    	long n = v.loadPeople(new StringReader(csv.toString()));
+
+    	Map<Integer, String> reported = new TreeMap<>();
+    	ShardedVaccines vs = new ShardedVaccines(3);
+    	vs.setLoadListener(reported::put);
+    	assertEquals(n, vs.loadPeople(new StringReader(csv.toString())));
+    	assertEquals(expected, reported);
+    	for (String p : persons) {
+    		String ssn = p.split(",")[0];
+    		assertEquals("The first line of an SSN is kept", v.getPerson(ssn), vs.getPerson(ssn));
+    	}
+    }
+
+    @Test
+    public void testInvalidYear() throws Exception {
+    	List<String> persons = new ArrayList<>(generatePersons(20000));
+    	StringBuilder csv = new StringBuilder("SSN,LAST,FIRST,YEAR\n");
+    	for (int i = 0; i < persons.size(); i++) {
+    		csv.append(persons.get(i)).append('\n');
+    		if (i % 500 == 11) {
+    			// a duplicate, also of a line still to be added to its shard
+    			csv.append(persons.get(i % 1000 == 11 ? i : i / 2).split(",")[0]).append(",Other,Name,19x0\n");
+    		}
+    		if (i % 700 == 5) {
+    			csv.append("EMPTY").append(i).append(",Other,Name,\n");
+    		}
+    	}
+    	csv.append("NEW,Other,Name,19y0\n").append("AFTER,Other,Name,1950\n");
+
+    	Map<Integer, String> expected = new TreeMap<>();
+    	Vaccines v = new Vaccines();
+    	v.setLoadListener(expected::put);
+    	Map<Integer, String> reported = new TreeMap<>();
+    	ShardedVaccines vs = new ShardedVaccines(3);
+    	vs.setLoadListener(reported::put);
+    	for (Object system : new Object[] {v, vs}) {
+    		try {
+    			if (system == v) {
+    				v.loadPeople(new StringReader(csv.toString()));
+    			} else {
+    				vs.loadPeople(new StringReader(csv.toString()));
+    			}
+    			fail("Invalid year of a new person accepted");
+    		} catch (NumberFormatException e) {
+    			assertEquals("For input string: \"19y0\"", e.getMessage());
+    		}
+    	}
+    	assertEquals(expected, reported);
+    	assertEquals("The lines before are added", v.countPeople(), vs.countPeople());
+    	assertEquals(persons.size(), vs.countPeople());
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+    	for (String csv : new String[] {"", "\n", "\nSSN,LAST,FIRST,YEAR\nAAA,Rossi,Mario,1950\n"}) {
+    		ShardedVaccines vs = new ShardedVaccines(SHARDS);
+    		assertEquals(new Vaccines().loadPeople(new StringReader(csv)), vs.loadPeople(new StringReader(csv)));
+    		assertEquals(0, vs.countPeople());
+    	}
+    	try {
+    		new ShardedVaccines(SHARDS).loadPeople(new StringReader("SSN,LAST\n"));
+    		fail("Invalid header accepted");
+    	} catch (VaccineException e) {
+    		// expected
+    	}
+    }
+
+    private static int hubShard(ShardedVaccines vs, String hub) {
+    	for (int k = 0; k < vs.getShards(); k++) {
+    		if (vs.getShard(k).getHubs().contains(hub)) {
+    			return k;
+    		}
+    	}
+    	return -1;
+    }
+
+    private static Set<String> generatePersons(int n) {
+    	HashSet<String> cfs = new HashSet<>();
+    	HashSet<String> people = new HashSet<>();
+    	while(cfs.size() < n) {
+	    	String first = pick(firsts,rg);
+	    	String last = pick(lasts,rg);
+	    	int year = 1922+rg.nextInt(2021-1921);
+	    	String place = pick(places,rg);
+	    	char cin1 = ((char) ('A'+rg.nextInt('Z'-'A')));
+	    	char cin2 = ((char) ('A'+rg.nextInt('Z'-'A')));
+	    	String ssn=toCode(last)+toCode(first)+(year%100)+place+cin1+cin2+rg.nextInt(1000);
+	    	if(cfs.add(ssn)){
+	    		people.add(ssn + "," + last + "," + first + "," + year);
+	    	}
+    	}
+    	return people;
+    }
+
+    static String[] firsts = {"Ali","Anna","Enrica","Giorgio","Luca","Lucia","Mario","Miriam","Paola","Xavier"};
+    static String[] lasts = {"Abaco","Draghi","Letto","Melone","Mattei","Russo","Neri","Rossi","Verdi","Xavier"};
+    static String[] places = {"L219","A213","F789","G456","H501","Z403","R129"};
+
+    private static String pick(String [] options, Random r) {
+    	return options[r.nextInt(options.length)];
+    }
+    private static Random rg = new Random(1971);
+
+    private static String toCode(String name) {
+    	name = name.toUpperCase();
+    	String consonants = name.replaceAll("[AEIOU ]", "");
+    	String vouels = name.replaceAll("[^AEIOU]", "");
+    	return (consonants+vouels).substring(0,3);
+    }
+}
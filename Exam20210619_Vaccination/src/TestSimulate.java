@@ -0,0 +1,74 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import it.polito.oop.vaccination.AllocationStats;
+import it.polito.oop.vaccination.StaffingScenario;
+import it.polito.oop.vaccination.VaccineException;
+import it.polito.oop.vaccination.Vaccines;
+
+public final class TestSimulate {
+
+    private static final int PEOPLE = 3000;
+
+    private static String ssn(int i) {
+    	return String.format("S%05d", i);
+    }
+
+    private static Vaccines create() throws VaccineException {
+    	Vaccines v = new Vaccines();
+    	for (int i = 0; i < PEOPLE; i++) {
+    		v.addPerson("First" + i, "Last" + i, ssn(i), 1925 + i % 95);
+    	}
+    	v.setAgeIntervals(30, 50, 70);
+    	for (int h = 0; h < 3; h++) {
+    		v.defineHub("Hub " + h);
+    		v.setStaff("Hub " + h, 1 + h, 2, 1);
+    	}
+    	v.setHours(4, 4, 4, 4, 4, 2, 0);
+    	return v;
+    }
+
+    @Test
+    public void testScenarios() throws VaccineException {
+    	Vaccines v = create();
+    	assertTrue(v.book("Hub 1", 2, ssn(94)));
+    	String before = v.getAllocationStats().toString();
+    	List<AllocationStats> res = v.simulate(Arrays.asList(
+    			new StaffingScenario(),
+    			new StaffingScenario().addStaff("Hub 0", 0, 0, 0),
+    			new StaffingScenario().addStaff("Hub 2", 3, 1, 2).addStaff("Hub 0", 1, 0, 0)));
+    	assertEquals("Simulations do not allocate", before, v.getAllocationStats().toString());
+
+    	Vaccines w = create();
+    	assertTrue(w.book("Hub 1", 2, ssn(94)));
+    	w.setStaff("Hub 2", 3 + 3, 2 + 1, 1 + 2);
+    	w.setStaff("Hub 0", 1 + 1, 2, 1);
+    	w.weekAllocate();
+    	v.weekAllocate();
+    	assertEquals("No changes", v.getAllocationStats().toString(), res.get(0).toString());
+    	assertEquals("No changes", v.getAllocationStats().toString(), res.get(1).toString());
+    	assertEquals(v.propAllocated(), res.get(0).propAllocated(), 0.0);
+    	assertEquals(w.getAllocationStats().toString(), res.get(2).toString());
+    	assertEquals(w.propAllocatedAge(), res.get(2).propAllocatedAge());
+    }
+
+    @Test
+    public void testInvalidScenario() throws VaccineException {
+    	Vaccines v = create();
+    	for (StaffingScenario s : Arrays.asList(new StaffingScenario().addStaff("Hub 9", 1, 1, 1),
+    			new StaffingScenario().addStaff("Hub 0", -1, 0, 0))) {
+    		try {
+    			v.simulate(Arrays.asList(new StaffingScenario(), s));
+    			fail("Invalid scenario accepted: " + s);
+    		} catch (VaccineException e) {
+    			// expected
+    		}
+    	}
+    }
+}
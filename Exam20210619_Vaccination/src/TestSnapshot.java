@@ -0,0 +1,155 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import it.polito.oop.vaccination.VaccineException;
+import it.polito.oop.vaccination.Vaccines;
+
+public final class TestSnapshot {
+
+    private static final int PEOPLE = 3000;
+    /** size of the header: magic, version, length and checksum */
+    private static final int HEADER = 24;
+
+    private Path dir;
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+    	dir = Files.createTempDirectory("snapshot");
+    	file = dir.resolve("state.snap");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+    	try (java.util.stream.Stream<Path> files = Files.list(dir)) {
+    		for (Path p : (Iterable<Path>) files::iterator) {
+    			Files.delete(p);
+    		}
+    	}
+    	Files.delete(dir);
+    }
+
+    private static Vaccines create(boolean compact) throws VaccineException {
+    	Vaccines v = new Vaccines(compact);
+    	for (int i = 0; i < PEOPLE; i++) {
+    		v.addPerson("Nome" + i, i % 10 == 0 ? "Niccolò" : "Last" + i, ssn(i), 1925 + i % 95);
+    	}
+    	v.setAgeIntervals(30, 50, 70);
+    	for (int h = 0; h < 3; h++) {
+    		v.defineHub("Hub " + h);
+    		v.setStaff("Hub " + h, 1 + h, 2, 1);
+    	}
+    	v.setHours(4, 4, 4, 4, 4, 2, 0);
+    	return v;
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+    	for (boolean compact : new boolean[] {false, true}) {
+    		Vaccines v = create(compact);
+    		assertTrue(v.book("Hub 1", 3, ssn(7)));
+    		v.allocate("Hub 0", 1);
+    		v.allocate("Hub 2", 5);
+    		v.saveSnapshot(file);
+
+    		Vaccines w = new Vaccines(!compact);
+    		w.loadSnapshot(file);
+    		assertSameState(v, w);
+    		assertEquals("Allocation should continue from the same state", v.weekAllocate(), w.weekAllocate());
+    		assertSameState(v, w);
+    	}
+    }
+
+    @Test
+    public void testCorruptedHeader() throws Exception {
+    	create(false).saveSnapshot(file);
+    	byte[] data = Files.readAllBytes(file);
+    	for (int pos : new int[] {0, 5, 10, 20, HEADER + 7, data.length - 1}) {
+    		byte[] bad = data.clone();
+    		bad[pos] ^= 0x40;
+    		Files.write(file, bad);
+    		assertRejected(file);
+    	}
+    	Files.write(file, java.util.Arrays.copyOf(data, HEADER - 1));
+    	assertRejected(file);
+    }
+
+    @Test
+    public void testInvalidSlot() throws Exception {
+    	Vaccines v = create(false);
+    	// the last person is allocated, so the file ends with hub, day and slot
+    	assertTrue(v.book("Hub 0", 2, ssn(PEOPLE - 1)));
+    	v.saveSnapshot(file);
+    	byte[] data = Files.readAllBytes(file);
+    	for (int[] dj : new int[][] {{7, 0}, {-2, 0}, {2, 16}, {2, -2}, {6, 0}}) {
+    		ByteBuffer b = ByteBuffer.wrap(data.clone());
+    		b.putInt(data.length - 8, dj[0]);
+    		b.putInt(data.length - 4, dj[1]);
+    		CRC32 crc = new CRC32();
+    		crc.update(b.array(), HEADER, data.length - HEADER);
+    		b.putLong(16, crc.getValue());
+    		Files.write(file, b.array());
+    		assertRejected(file);
+    	}
+    	Files.write(file, data);
+    	Vaccines w = new Vaccines();
+    	w.loadSnapshot(file);
+    	assertSameState(v, w);
+    }
+
+    private static void assertRejected(Path file) throws IOException {
+    	Vaccines w = new Vaccines();
+    	try {
+    		w.loadSnapshot(file);
+    		fail("Invalid snapshot accepted");
+    	} catch (VaccineException e) {
+    		assertEquals("The system should be left empty", 0, w.countPeople());
+    		assertTrue(w.getHubs().isEmpty());
+    		assertTrue(w.getAgeIntervals().size() == 1);
+    	}
+    }
+
+    private static void assertSameState(Vaccines v, Vaccines w) throws VaccineException {
+    	assertEquals(v.countPeople(), w.countPeople());
+    	for (int i = 0; i < PEOPLE; i++) {
+    		assertEquals(v.getPerson(ssn(i)), w.getPerson(ssn(i)));
+    		assertEquals(v.getAge(ssn(i)), w.getAge(ssn(i)));
+    	}
+    	assertEquals(v.getAgeIntervals(), w.getAgeIntervals());
+    	for (String range : v.getAgeIntervals()) {
+    		assertEquals(v.getInInterval(range), w.getInInterval(range));
+    	}
+    	assertEquals(v.getHours(), w.getHours());
+    	assertEquals(v.getAvailable(), w.getAvailable());
+    	assertEquals(v.propAllocatedAge(), w.propAllocatedAge());
+    	assertEquals(v.distributionAllocated(), w.distributionAllocated());
+    	List<Integer> vo = new ArrayList<>();
+    	List<Integer> wo = new ArrayList<>();
+    	for (String h : v.getHubs()) {
+    		for (int d = 0; d < 7; d++) {
+    			for (String slot : v.getHours().get(d)) {
+    				vo.add(v.getSlotOccupancy(h, d, slot));
+    				wo.add(w.getSlotOccupancy(h, d, slot));
+    			}
+    		}
+    	}
+    	assertEquals("Different slot occupancy", vo, wo);
+    }
+
+    private static String ssn(int i) {
+    	return String.format("SSN%06d", i);
+    }
+}
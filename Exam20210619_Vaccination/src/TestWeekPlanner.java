@@ -0,0 +1,81 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import it.polito.oop.vaccination.VaccineException;
+import it.polito.oop.vaccination.Vaccines;
+import it.polito.oop.vaccination.WeekPlanner;
+
+public final class TestWeekPlanner {
+
+    private static final int PEOPLE = 6000;
+
+    private static String ssn(int i) {
+    	return String.format("W%05d", i);
+    }
+
+    /**
+     * Creates a system with the people not in the given set.
+     */
+    private static Vaccines create(Set<String> excluded) throws VaccineException {
+    	Vaccines v = new Vaccines();
+    	for (int i = 0; i < PEOPLE; i++) {
+    		if (!excluded.contains(ssn(i))) {
+    			v.addPerson("First" + i, "Last" + i, ssn(i), 1925 + i * 7 % 95);
+    		}
+    	}
+    	v.setAgeIntervals(30, 50, 70);
+    	for (int h = 0; h < 3; h++) {
+    		v.defineHub("Hub " + h);
+    		v.setStaff("Hub " + h, 1 + h, 2, 1);
+    	}
+    	v.setHours(4, 4, 4, 4, 4, 2, 0);
+    	return v;
+    }
+
+    @Test
+    public void testFirstWeek() throws VaccineException {
+    	Vaccines v = create(new HashSet<>());
+    	assertTrue(v.book("Hub 1", 0, ssn(5)));
+    	WeekPlanner p = v.planWeeks(3);
+    	List<Map<String, List<String>>> planned = p.getWeek(0);
+    	assertEquals("Planning does not allocate", 1.0 / PEOPLE, v.propAllocated(), 1e-9);
+    	assertEquals("The first week is the next weekAllocate", v.weekAllocate(), planned);
+    }
+
+    @Test
+    public void testStaffChange() throws VaccineException {
+    	Vaccines v = create(new HashSet<>());
+    	WeekPlanner p = v.planWeeks(4);
+    	List<Map<String, List<String>>> first = p.getWeek(0);
+    	List<Map<String, List<String>>> second = p.getWeek(1);
+    	List<Map<String, List<String>>> third = p.getWeek(2);
+    	p.setStaff(2, "Hub 0", 6, 6, 6);
+    	assertEquals("Weeks before the change are kept", first, p.getWeek(0));
+    	assertEquals("Weeks before the change are kept", second, p.getWeek(1));
+    	assertNotEquals("The week of the change is recomputed", third, p.getWeek(2));
+
+    	// a system with the people left after two weeks allocates as the third week
+    	Set<String> allocated = new HashSet<>();
+    	for (List<Map<String, List<String>>> week : Arrays.asList(first, second)) {
+    		for (Map<String, List<String>> day : week) {
+    			for (List<String> ssns : day.values()) {
+    				allocated.addAll(ssns);
+    			}
+    		}
+    	}
+    	Vaccines w = create(allocated);
+    	w.setStaff("Hub 0", 6, 6, 6);
+    	assertEquals(w.getAvailable(), p.getAvailable(2));
+    	assertEquals(w.weekAllocate(), p.getWeek(2));
+    	assertEquals("The following weeks keep the new staffing", w.getAvailable(), p.getAvailable(3));
+    }
+}
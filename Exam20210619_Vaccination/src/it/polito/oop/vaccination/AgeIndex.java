@@ -0,0 +1,574 @@
+package it.polito.oop.vaccination;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import it.polito.oop.vaccination.Person.STATUS;
+
+/**
+ * Index of the people registered in the system by age interval.
+ * <p>
+ * Each interval has a bucket with the rows of the people whose age falls in it.
+ * A bucket keeps its allocated people in front of an allocation cursor,
+ * followed by the people still to be allocated sorted by SSN, so that
+ * allocations proceed in the same order as a visit of the whole registry
+ * without going over the already allocated people again.
+ * <p>
+ * People booked individually (see {@link #book}) are allocated out of
+ * order: they remain after the cursor and are skipped when reached.
+ * The allocated people of a bucket are therefore those before the cursor
+ * and those booked, which gives the allocation statistics directly.
+ * <p>
+ * Buckets are locked independently, so allocations from different
+ * intervals can proceed in parallel; adding people and rebuilding the
+ * index require exclusive access to the whole index.
+ */
+class AgeIndex {
+
+	/** highest break for which a table of the ages is kept */
+	private static final int MAX_TABLE = 1 << 16;
+
+	/**
+	 * People in a single age interval.
+	 */
+	private static class Bucket {
+		int[] rows = new int[16];
+		int size;
+		/** rows before the cursor are allocated */
+		int cursor;
+		/** rows after the cursor that have been booked individually */
+		int booked;
+		/** rows from here on have been added and are not sorted yet */
+		int sorted;
+		/** the whole bucket is sorted by SSN */
+		boolean ordered = true;
+
+		void add(int row) {
+			if (size == rows.length) {
+				rows = Arrays.copyOf(rows, size * 2);
+			}
+			rows[size++] = row;
+		}
+	}
+
+	private final PersonStore store;
+	private final int[] breaks;
+	/** interval of each age below the highest break */
+	private final byte[] byAge;
+	private final List<Bucket> buckets = new ArrayList<>();
+	/** labels of the intervals, see {@link Vaccines#getAgeIntervals} */
+	private final List<String> labels;
+	/** interval of each label */
+	private final Map<String, Integer> byLabel = new HashMap<>();
+	/** allocated people that are not in any interval */
+	private final AtomicInteger outside = new AtomicInteger();
+	/** changes of allocation status so far, to validate views of the allocation */
+	final AtomicLong changes = new AtomicLong();
+	/** journal of the allocations, if any */
+	Journal journal;
+
+	/**
+	 * Builds the index for the given interval breaks.
+	 *
+	 * @param breaks the interval breaks, sorted
+	 * @param store the people already registered
+	 * @param journal the journal of the allocations, {@code null} for none
+	 */
+	AgeIndex(int[] breaks, PersonStore store, Journal journal) {
+		this.store = store;
+		this.journal = journal;
+		this.breaks = breaks.clone();
+		int ages = this.breaks.length == 0 ? 0 : Math.max(0, this.breaks[this.breaks.length - 1]);
+		if (ages <= MAX_TABLE && this.breaks.length < Byte.MAX_VALUE) {
+			byAge = new byte[ages];
+			for (int age = 0; age < ages; age++) {
+				byAge[age] = (byte) intervalOf(age);
+			}
+		} else {
+			byAge = null;
+		}
+		String[] l = new String[this.breaks.length + 1];
+		for (int i = 0; i <= this.breaks.length; i++) {
+			buckets.add(new Bucket());
+			int lower = i == 0 ? 0 : this.breaks[i - 1];
+			l[i] = i == this.breaks.length ? "[" + lower + ",+)" : "[" + lower + "," + this.breaks[i] + ")";
+			byLabel.putIfAbsent(l[i], i);
+		}
+		labels = Collections.unmodifiableList(Arrays.asList(l));
+		for (int row = 0; row < store.size(); row++) {
+			int i = intervalOfYear(store.getYear(row));
+			if (i >= 0) {
+				buckets.get(i).add(row);
+			} else if (store.getSt(row) == STATUS.ALLOCATED) {
+				outside.incrementAndGet();
+			}
+		}
+		for (Bucket b : buckets) {
+			// people already allocated go in front of the cursor
+			int[] rest = new int[b.size];
+			int n = 0;
+			for (int k = 0; k < b.size; k++) {
+				if (store.getSt(b.rows[k]) == STATUS.ALLOCATED) {
+					b.rows[b.cursor++] = b.rows[k];
+				} else {
+					rest[n++] = b.rows[k];
+				}
+			}
+			System.arraycopy(rest, 0, b.rows, b.cursor, n);
+			sort(b.rows, 0, b.cursor);
+			sort(b.rows, b.cursor, b.size);
+			b.sorted = b.size;
+			b.ordered = b.cursor == 0 || b.cursor == b.size;
+		}
+	}
+
+	/**
+	 * Number of intervals (and buckets) in the index.
+	 */
+	int size() {
+		return buckets.size();
+	}
+
+	/**
+	 * Finds the interval that contains the given age.
+	 *
+	 * @param age age in years
+	 * @return the interval index or -1 if the age is negative
+	 */
+	int intervalOf(int age) {
+		if (age < 0) {
+			return -1;
+		}
+		int i = 0;
+		while (i < breaks.length && breaks[i] <= age) {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * Finds the interval that contains the age of people born in a year,
+	 * through a table of the ages below the highest break.
+	 *
+	 * @param year birth year
+	 * @return the interval index or -1 if the age is negative
+	 */
+	int intervalOfYear(int year) {
+		int age = Vaccines.CURRENT_YEAR - year;
+		if (byAge == null || age < 0) {
+			return intervalOf(age);
+		}
+		return age < byAge.length ? byAge[age] : breaks.length;
+	}
+
+	/**
+	 * Finds the interval with the given label.
+	 *
+	 * @param label the label, as {@code "[40,50)"}
+	 * @return the interval index or -1 if no interval has that label
+	 */
+	int find(String label) {
+		Integer i = byLabel.get(label);
+		return i == null ? -1 : i;
+	}
+
+	/**
+	 * Finds the interval with exactly the given bounds.
+	 *
+	 * @param start lower bound (included)
+	 * @param end upper bound (excluded), {@code Integer.MAX_VALUE} for infinity
+	 * @return the interval index or -1 if no interval matches
+	 */
+	int find(int start, int end) {
+		for (int i = 0; i < buckets.size(); i++) {
+			int lower = i == 0 ? 0 : breaks[i - 1];
+			int upper = i == breaks.length ? Integer.MAX_VALUE : breaks[i];
+			if (lower == start && upper == end) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Label of an interval, in the same format as {@link Vaccines#getAgeIntervals}.
+	 */
+	String label(int i) {
+		return labels.get(i);
+	}
+
+	/**
+	 * Labels of all the intervals, from the youngest.
+	 */
+	List<String> labels() {
+		return labels;
+	}
+
+	/**
+	 * Adds a newly registered person to the corresponding bucket.
+	 */
+	void add(int row) {
+		int i = intervalOfYear(store.getYear(row));
+		if (i >= 0) {
+			buckets.get(i).add(row);
+		}
+	}
+
+	/**
+	 * Retrieves the people in an interval, sorted by SSN.
+	 *
+	 * @param i interval index
+	 * @return the rows of the people in the interval
+	 */
+	int[] members(int i) {
+		int[] res;
+		boolean ordered;
+		Bucket b = buckets.get(i);
+		synchronized (b) {
+			normalize(b);
+			res = Arrays.copyOf(b.rows, b.size);
+			ordered = b.ordered;
+		}
+		if (!ordered) {
+			sort(res, 0, res.length);
+		}
+		return res;
+	}
+
+	/**
+	 * Number of people in an interval not yet allocated.
+	 *
+	 * @param i interval index
+	 * @return count of people still to be allocated
+	 */
+	int available(int i) {
+		Bucket b = buckets.get(i);
+		synchronized (b) {
+			return b.size - b.cursor - b.booked;
+		}
+	}
+
+	/**
+	 * Allocates the next people of an interval to a hub, moving the
+	 * allocation cursor forward.
+	 *
+	 * @param i interval index
+	 * @param n number of people to allocate
+	 * @param h the hub
+	 * @param d day of the week
+	 * @param res the list where the SSNs of the allocated people are added
+	 * @param events the list where the allocations are added for the feeds, {@code null} for none
+	 * @return the number of people allocated, less than {@code n}
+	 *         if the interval has not enough people available
+	 */
+	int allocate(int i, int n, Hub h, int d, List<String> res, List<AllocationEvent> events) {
+		Journal journal = this.journal;
+		Journal.Batch jb = journal == null ? null : journal.batch();
+		Bucket b = buckets.get(i);
+		int count = 0;
+		synchronized (b) {
+			normalize(b);
+			for (; count < n && b.cursor < b.size; b.cursor++) {
+				int row = b.rows[b.cursor];
+				if (store.allocate(row, h)) {
+					String ssn = store.getSsn(row);
+					schedule(row, ssn, h, d, Journal.ALLOCATE, jb, events);
+					res.add(ssn);
+					count++;
+				} else {
+					b.booked--;
+				}
+			}
+		}
+		if (jb != null) {
+			journal.append(jb);
+		}
+		if (count > 0) {
+			changes.incrementAndGet();
+		}
+		return count;
+	}
+
+	/**
+	 * Allocates a single person to a hub, unless already allocated.
+	 *
+	 * @param row the person
+	 * @param h the hub
+	 * @param d day of the week
+	 * @param events the list where the allocation is added for the feeds, {@code null} for none
+	 * @return {@code true} if the person has been allocated
+	 */
+	boolean book(int row, Hub h, int d, List<AllocationEvent> events) {
+		Journal journal = this.journal;
+		Journal.Batch jb = journal == null ? null : journal.batch();
+		if (!mark(row, h)) {
+			return false;
+		}
+		schedule(row, events == null ? null : store.getSsn(row), h, d, Journal.BOOK, jb, events);
+		if (jb != null) {
+			journal.append(jb);
+		}
+		changes.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * Allocates a single person to a hub and a given slot, unless already
+	 * allocated, as recorded in a journal.
+	 *
+	 * @param row the person
+	 * @param h the hub
+	 * @param d day of the week
+	 * @param j slot of the day, -1 for none
+	 * @return {@code true} if the person has been allocated
+	 */
+	boolean restore(int row, Hub h, int d, int j) {
+		if (!mark(row, h)) {
+			return false;
+		}
+		store.schedule(row, d, j);
+		changes.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * Marks a person as allocated out of the order of the buckets.
+	 */
+	private boolean mark(int row, Hub h) {
+		int i = intervalOfYear(store.getYear(row));
+		if (i < 0) {
+			if (!store.allocate(row, h)) {
+				return false;
+			}
+			outside.incrementAndGet();
+			return true;
+		}
+		Bucket b = buckets.get(i);
+		synchronized (b) {
+			if (!store.allocate(row, h)) {
+				return false;
+			}
+			b.booked++;
+			return true;
+		}
+	}
+
+	/**
+	 * Number of people in an interval.
+	 */
+	int count(int i) {
+		Bucket b = buckets.get(i);
+		synchronized (b) {
+			return b.size;
+		}
+	}
+
+	/**
+	 * Number of allocated people in an interval.
+	 */
+	int allocated(int i) {
+		Bucket b = buckets.get(i);
+		synchronized (b) {
+			return b.cursor + b.booked;
+		}
+	}
+
+	/**
+	 * Number of allocated people, in any interval or in none.
+	 */
+	int allocated() {
+		int n = outside.get();
+		for (int i = 0; i < buckets.size(); i++) {
+			n += allocated(i);
+		}
+		return n;
+	}
+
+	/**
+	 * Prepares a bulk allocation: the people booked individually are
+	 * moved in front of the cursors, so that the people available in each
+	 * bucket follow the cursor without gaps.
+	 * Requires exclusive access to the index until {@link #commit}.
+	 *
+	 * @return an empty plan starting from the current cursors
+	 */
+	AllocationPlan plan() {
+		int[] start = new int[buckets.size()];
+		int[] available = new int[buckets.size()];
+		for (int i = 0; i < buckets.size(); i++) {
+			Bucket b = buckets.get(i);
+			compact(b);
+			start[i] = b.cursor;
+			available[i] = b.size - b.cursor;
+		}
+		return new AllocationPlan(start, available);
+	}
+
+	/**
+	 * Copies the people still to be allocated in each bucket,
+	 * in the order they would be allocated.
+	 * Requires exclusive access to the index.
+	 *
+	 * @return the rows of the people available in each interval
+	 */
+	int[][] pending() {
+		int[][] res = new int[buckets.size()][];
+		for (int i = 0; i < buckets.size(); i++) {
+			Bucket b = buckets.get(i);
+			compact(b);
+			res[i] = Arrays.copyOfRange(b.rows, b.cursor, b.size);
+		}
+		return res;
+	}
+
+	/**
+	 * Moves the people booked individually in front of the cursor.
+	 */
+	private void compact(Bucket b) {
+		normalize(b);
+		if (b.booked > 0) {
+			int[] rest = new int[b.size - b.cursor];
+			int n = 0;
+			int k = b.cursor;
+			for (int pos = b.cursor; pos < b.size; pos++) {
+				int row = b.rows[pos];
+				if (store.getSt(row) == STATUS.ALLOCATED) {
+					b.rows[k++] = row;
+				} else {
+					rest[n++] = row;
+				}
+			}
+			System.arraycopy(rest, 0, b.rows, k, n);
+			b.cursor = k;
+			b.booked = 0;
+			b.ordered = false;
+		}
+	}
+
+	/**
+	 * Marks as allocated to a hub the people reserved by a list of segments
+	 * of a plan, without a slot yet (see {@link #assign}).
+	 * Different lists of segments of the same plan can be marked in parallel.
+	 *
+	 * @param segments the segments from {@link AllocationPlan#reserve}
+	 * @param h the hub
+	 * @return the rows of the people marked
+	 */
+	int[] mark(int[] segments, Hub h) {
+		int[] res = new int[AllocationPlan.size(segments)];
+		int n = 0;
+		for (int s = 0; s < segments.length; s += 3) {
+			int[] rows = buckets.get(segments[s]).rows;
+			for (int pos = segments[s + 1], end = pos + segments[s + 2]; pos < end; pos++) {
+				store.allocate(rows[pos], h);
+				res[n++] = rows[pos];
+			}
+		}
+		changes.incrementAndGet();
+		return res;
+	}
+
+	/**
+	 * Assigns the slots of a day to people marked as allocated to a hub,
+	 * recording their allocation. People no longer waiting for a slot
+	 * of the hub, e.g. after the allocation has been cleared, are skipped.
+	 *
+	 * @param rows the rows from {@link #mark}
+	 * @param h the hub
+	 * @param d day of the week
+	 * @param events the list where the allocations are added for the feeds, {@code null} for none
+	 * @return the SSNs of the people allocated
+	 */
+	List<String> assign(int[] rows, Hub h, int d, List<AllocationEvent> events) {
+		Journal journal = this.journal;
+		Journal.Batch jb = journal == null ? null : journal.batch();
+		List<String> res = new ArrayList<>(rows.length);
+		for (int row : rows) {
+			if (store.getSt(row) == STATUS.ALLOCATED && store.getHub(row) == h && store.getDay(row) < 0) {
+				String ssn = store.getSsn(row);
+				schedule(row, ssn, h, d, Journal.ALLOCATE, jb, events);
+				res.add(ssn);
+			}
+		}
+		if (jb != null) {
+			journal.append(jb);
+		}
+		changes.incrementAndGet();
+		return res;
+	}
+
+	/**
+	 * Moves the cursors after the people reserved by a plan,
+	 * once they have been allocated.
+	 */
+	void commit(AllocationPlan plan) {
+		for (int i = 0; i < buckets.size(); i++) {
+			buckets.get(i).cursor = plan.next[i];
+		}
+	}
+
+	/**
+	 * Moves all the allocation cursors back to the beginning, to be
+	 * invoked once all the people have been marked as not allocated.
+	 */
+	void clearAllocation() {
+		changes.incrementAndGet();
+		if (journal != null) {
+			Journal.Batch jb = journal.batch();
+			jb.clear();
+			journal.append(jb);
+		}
+		outside.set(0);
+		for (Bucket b : buckets) {
+			b.cursor = 0;
+			b.booked = 0;
+			if (!b.ordered || b.sorted < b.size) {
+				sort(b.rows, 0, b.size);
+				b.sorted = b.size;
+				b.ordered = true;
+			}
+		}
+	}
+
+	/**
+	 * Assigns a slot to a person just allocated, recording the allocation
+	 * in the journal and in the events to be delivered to the feeds.
+	 */
+	private void schedule(int row, String ssn, Hub h, int d, byte type, Journal.Batch jb,
+			List<AllocationEvent> events) {
+		int j = h.schedule(d);
+		store.schedule(row, d, j);
+		if (jb != null) {
+			jb.allocate(type, row, h, d, j);
+		}
+		if (events != null) {
+			events.add(new AllocationEvent(ssn, h.getName(), d, j < 0 ? null : SlotTable.label(j)));
+		}
+	}
+
+	/**
+	 * Sorts the rows added to a bucket after its last visit
+	 * into the part following the allocation cursor.
+	 */
+	private void normalize(Bucket b) {
+		if (b.sorted < b.size) {
+			sort(b.rows, b.sorted, b.size);
+			RowSort.merge(store, b.rows, b.cursor, b.sorted, b.size, new int[b.size - b.cursor]);
+			if (b.cursor > 0 && b.cursor < b.size
+					&& store.compareSsn(b.rows[b.cursor - 1], b.rows[b.cursor]) > 0) {
+				b.ordered = false;
+			}
+			b.sorted = b.size;
+		}
+	}
+
+	private void sort(int[] rows, int from, int to) {
+		RowSort.sort(store, rows, from, to);
+	}
+}
@@ -0,0 +1,54 @@
+package it.polito.oop.vaccination;
+
+/**
+ * Allocation of a person to a hub, a day and a time slot,
+ * as delivered by an {@link AllocationFeed}.
+ */
+public class AllocationEvent {
+
+	private final String ssn;
+	private final String hub;
+	private final int day;
+	private final String slot;
+
+	AllocationEvent(String ssn, String hub, int day, String slot) {
+		this.ssn = ssn;
+		this.hub = hub;
+		this.day = day;
+		this.slot = slot;
+	}
+
+	/**
+	 * "Codice fiscale" of the person allocated.
+	 */
+	public String getSsn() {
+		return ssn;
+	}
+
+	/**
+	 * Name of the hub.
+	 */
+	public String getHub() {
+		return hub;
+	}
+
+	/**
+	 * Day of week index (0 = Monday).
+	 */
+	public int getDay() {
+		return day;
+	}
+
+	/**
+	 * Time slot, as {@code "09:15"}, or {@code null} if the person
+	 * exceeds the capacity of the slots (see {@link Vaccines#getSlotOccupancy}).
+	 */
+	public String getSlot() {
+		return slot;
+	}
+
+	@Override
+	public String toString() {
+		return ssn + "," + hub + "," + day + "," + (slot == null ? "" : slot);
+	}
+}
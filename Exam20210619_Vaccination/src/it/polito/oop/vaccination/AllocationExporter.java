@@ -0,0 +1,270 @@
+package it.polito.oop.vaccination;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import it.polito.oop.vaccination.Person.STATUS;
+
+/**
+ * Writes the allocation of a {@link Vaccines} system as CSV, see {@link Vaccines#exporter}.
+ * <p>
+ * The content has a {@code HUB,DAY,SLOT,SSN} header followed by a line
+ * for each allocated person; the slot is empty for people without one.
+ * The whole allocation is written in order of registration of the people,
+ * which visits the people store sequentially; the allocation of a hub on
+ * a day is sorted by time slot.
+ * <p>
+ * For the exports of a hub on a day, the allocated people of all the hubs
+ * and days are grouped by hub, day and slot in a single visit of the store.
+ * The groups are kept by the exporter until the allocation changes, so
+ * sending each hub its daily lists visits the store once.
+ * <p>
+ * Lines are encoded directly from the people store into a chunk of bytes
+ * that, once full, is written to the channel through a direct buffer.
+ * Both belong to the exporter and are reused by all its exports, so an
+ * exporter should be kept for repeated exports. Exports of the same
+ * exporter are serialized.
+ */
+public class AllocationExporter {
+
+	static final int BUFFER = 1 << 16;
+
+	private static final byte[] HEADER = "HUB,DAY,SLOT,SSN\n".getBytes(StandardCharsets.US_ASCII);
+	/** groups of the slots of a day, the first one for people without slot */
+	private static final int SLOTS = SlotTable.MAX_HOURS * SlotTable.PER_HOUR + 1;
+
+	private final Vaccines v;
+	private final ByteBuffer buf;
+	/** lines encoded and not yet written */
+	private byte[] chunk;
+	private int pos;
+	private WritableByteChannel ch;
+	/** encoded names of the hubs, by id */
+	private byte[][] names;
+	/** allocated people grouped by hub, day and slot, valid for the following index and changes */
+	private int[] grouped = new int[0];
+	/** beginning of each group in {@link #grouped}, for the hubs known when grouped */
+	private int[] start = new int[2];
+	/** allocated people in order of registration, and their groups */
+	private int[] rows = new int[0];
+	private int[] group = new int[0];
+	private AgeIndex groupedIndex;
+	private long groupedChanges;
+
+	AllocationExporter(Vaccines v, int size) {
+		this.v = v;
+		this.buf = ByteBuffer.allocateDirect(size);
+		this.chunk = new byte[size];
+	}
+
+	/**
+	 * Writes the whole allocation.
+	 *
+	 * @param ch the channel receiving the CSV content
+	 * @return the number of people written
+	 * @throws IOException in case of IO error
+	 */
+	public synchronized long export(WritableByteChannel ch) throws IOException {
+		v.lock.readLock().lock();
+		try {
+			return export(ch, -1, -1);
+		} finally {
+			v.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Writes the allocation of a hub on a day, e.g. to send a hub its daily list.
+	 *
+	 * @param ch the channel receiving the CSV content
+	 * @param hubName name of the hub
+	 * @param d day of week index (0 = Monday)
+	 * @return the number of people written
+	 * @throws IOException in case of IO error
+	 * @throws VaccineException in case of undefined hub or invalid day
+	 */
+	public synchronized long export(WritableByteChannel ch, String hubName, int d) throws IOException, VaccineException {
+		v.lock.readLock().lock();
+		try {
+			Hub h = v.hubs.get(hubName);
+			if (h == null || d < 0 || d >= 7) {
+				throw new VaccineException();
+			}
+			return export(ch, h.id, d);
+		} finally {
+			v.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Writes the people allocated to a hub on a day, sorted by slot,
+	 * or all the allocated people in order of registration
+	 * if the hub is -1, visiting the store sequentially.
+	 */
+	private long export(WritableByteChannel ch, int hub, int d) throws IOException {
+		this.ch = ch;
+		PersonStore store = v.store;
+		names = new byte[v.hubList.size()][];
+		pos = put(HEADER, 0);
+		long n = 0;
+		if (hub < 0) {
+			for (int row = 0; row < store.size(); row++) {
+				if (store.getSt(row) == STATUS.ALLOCATED) {
+					putRow(store, row);
+					n++;
+				}
+			}
+		} else {
+			AgeIndex index = v.index;
+			long changes = index.changes.get();
+			if (index != groupedIndex || changes != groupedChanges || (hub + 1) * 7 * SLOTS + 2 > start.length) {
+				group(store);
+				groupedIndex = index;
+				groupedChanges = changes;
+			}
+			for (int g = (hub * 7 + d) * SLOTS, end = g + SLOTS; g < end; g++) {
+				for (int k = start[g]; k < start[g + 1]; k++) {
+					putRow(store, grouped[k]);
+					n++;
+				}
+			}
+		}
+		drain();
+		this.ch = null;
+		return n;
+	}
+
+	/**
+	 * Groups the allocated people by hub, day and slot with a counting sort,
+	 * keeping the order of registration within each group.
+	 */
+	private void group(PersonStore store) {
+		int groups = v.hubList.size() * 7 * SLOTS;
+		if (start.length < groups + 2) {
+			start = new int[groups + 2];
+		} else {
+			Arrays.fill(start, 0);
+		}
+		int n = 0;
+		for (int row = 0; row < store.size(); row++) {
+			int day = store.getDay(row);
+			if (store.getSt(row) == STATUS.ALLOCATED && day >= 0) {
+				if (n == rows.length) {
+					rows = Arrays.copyOf(rows, Math.max(1024, 2 * n));
+					group = Arrays.copyOf(group, rows.length);
+				}
+				int g = (store.getHub(row).id * 7 + day) * SLOTS + SlotTable.index(store.getSlot(row)) + 1;
+				rows[n] = row;
+				group[n++] = g;
+				start[g + 2]++;
+			}
+		}
+		for (int g = 2; g < start.length; g++) {
+			start[g] += start[g - 1];
+		}
+		if (grouped.length < n) {
+			grouped = new int[rows.length];
+		}
+		// start[g + 1] moves from the beginning of group g to its end
+		for (int k = 0; k < n; k++) {
+			grouped[start[group[k] + 1]++] = rows[k];
+		}
+	}
+
+	/**
+	 * Encodes the line of an allocated person.
+	 */
+	private void putRow(PersonStore store, int row) throws IOException {
+		Hub h = store.getHub(row);
+		if (names[h.id] == null) {
+			names[h.id] = quote(h.getName()).getBytes(StandardCharsets.UTF_8);
+		}
+		String ssn = store.getSsn(row);
+		// hub, day, slot, separators and SSN, up to 3 bytes per char
+		byte[] b = reserve(names[h.id].length + 10 + 3 * ssn.length());
+		int p = put(names[h.id], pos);
+		b[p++] = ',';
+		int day = store.getDay(row);
+		if (day >= 0) {
+			b[p++] = (byte) ('0' + day);
+		}
+		b[p++] = ',';
+		String slot = store.getSlot(row);
+		if (slot != null) {
+			for (int k = 0; k < slot.length(); k++) {
+				b[p++] = (byte) slot.charAt(k);
+			}
+		}
+		b[p++] = ',';
+		p = putSsn(ssn, p);
+		b[p++] = '\n';
+		pos = p;
+	}
+
+	/**
+	 * Encodes an SSN at a position of the chunk.
+	 *
+	 * @return the position following the SSN
+	 */
+	private int putSsn(String ssn, int p) {
+		int len = ssn.length();
+		for (int k = 0; k < len; k++) {
+			char c = ssn.charAt(k);
+			if (c >= 0x80) {
+				return put(ssn.getBytes(StandardCharsets.UTF_8), p);
+			}
+			// ASCII, as most SSNs
+			chunk[p + k] = (byte) c;
+		}
+		return p + len;
+	}
+
+	private int put(byte[] b, int p) {
+		System.arraycopy(b, 0, chunk, p, b.length);
+		return p + b.length;
+	}
+
+	/**
+	 * Makes room in the chunk for the given number of bytes,
+	 * writing its content if needed.
+	 */
+	private byte[] reserve(int n) throws IOException {
+		if (pos + n > chunk.length) {
+			drain();
+			if (n > chunk.length) {
+				chunk = new byte[n];
+			}
+		}
+		return chunk;
+	}
+
+	/**
+	 * Writes the content of the chunk to the channel through the direct buffer.
+	 */
+	private void drain() throws IOException {
+		for (int off = 0; off < pos; ) {
+			buf.clear();
+			int n = Math.min(buf.capacity(), pos - off);
+			buf.put(chunk, off, n);
+			off += n;
+			buf.flip();
+			while (buf.hasRemaining()) {
+				ch.write(buf);
+			}
+		}
+		pos = 0;
+	}
+
+	/**
+	 * Quotes a CSV field if it contains separators or quotes.
+	 */
+	static String quote(String s) {
+		if (s.indexOf(',') < 0 && s.indexOf('"') < 0 && s.indexOf('\n') < 0 && s.indexOf('\r') < 0) {
+			return s;
+		}
+		return '"' + s.replace("\"", "\"\"") + '"';
+	}
+}
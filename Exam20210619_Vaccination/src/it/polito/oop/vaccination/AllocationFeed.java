@@ -0,0 +1,105 @@
+package it.polito.oop.vaccination;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded stream of the allocations performed by a {@link Vaccines}
+ * system, see {@link Vaccines#subscribe}.
+ * <p>
+ * The allocations of {@link Vaccines#allocate} and {@link Vaccines#book}
+ * are delivered to the feed when the operation completes, those of
+ * {@link Vaccines#weekAllocate} for each hub and day as soon as it is
+ * allocated, so people can be notified while the week is still being
+ * allocated. Allocations are delivered out of any lock by the thread that
+ * invoked the operation; when the feed is full that thread waits for the
+ * consumer to take events, so the memory used by the feed is bounded by
+ * its capacity.
+ * <p>
+ * Since allocations wait for the consumer, the thread taking events
+ * must not allocate. Closing the feed releases the waiting
+ * allocations and discards the events not taken.
+ */
+public class AllocationFeed implements AutoCloseable {
+
+	private static final long RETRY = 50;
+
+	private final BlockingQueue<AllocationEvent> queue;
+	private final List<AllocationFeed> feeds;
+	private volatile boolean closed;
+
+	AllocationFeed(int capacity, List<AllocationFeed> feeds) {
+		this.queue = new ArrayBlockingQueue<>(capacity);
+		this.feeds = feeds;
+	}
+
+	/**
+	 * Takes the next allocation, waiting for one if needed.
+	 *
+	 * @return the allocation
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public AllocationEvent take() throws InterruptedException {
+		return queue.take();
+	}
+
+	/**
+	 * Takes the next allocation, waiting at most the given time.
+	 *
+	 * @param timeout how long to wait
+	 * @param unit unit of the timeout
+	 * @return the allocation or {@code null} if none arrived in time
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public AllocationEvent poll(long timeout, TimeUnit unit) throws InterruptedException {
+		return queue.poll(timeout, unit);
+	}
+
+	/**
+	 * Takes the allocations already in the feed, without waiting.
+	 *
+	 * @param c the collection receiving the allocations
+	 * @param max maximum number of allocations to take
+	 * @return the number of allocations taken
+	 */
+	public int drainTo(Collection<? super AllocationEvent> c, int max) {
+		return queue.drainTo(c, max);
+	}
+
+	/**
+	 * Stops receiving allocations, discarding those not taken.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		feeds.remove(this);
+		queue.clear();
+	}
+
+	/**
+	 * Delivers an allocation, waiting while the feed is full.
+	 * The allocation is discarded if the feed is closed meanwhile.
+	 */
+	void publish(AllocationEvent e) {
+		boolean interrupted = false;
+		try {
+			while (!closed) {
+				try {
+					if (queue.offer(e, RETRY, TimeUnit.MILLISECONDS)) {
+						return;
+					}
+				} catch (InterruptedException ie) {
+					// the allocation is done, it must be delivered anyway
+					interrupted = true;
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package it.polito.oop.vaccination;
+
+import java.util.Arrays;
+
+/**
+ * Reservation of places in the age intervals for a sequence of
+ * allocations, computed from the number of people available in
+ * each interval without touching the people themselves.
+ * <p>
+ * Each allocation follows the rule of {@link Vaccines#allocate}:
+ * starting with the oldest interval 40% of the remaining places
+ * go to that interval, then the places left are filled again
+ * starting with the oldest interval. The allocation is described
+ * by a list of segments of the interval buckets, in the order
+ * the people are allocated.
+ */
+class AllocationPlan {
+
+	/** position of the first reserved person in each bucket */
+	final int[] start;
+	/** position after the last reserved person in each bucket */
+	final int[] next;
+	private final int[] available;
+
+	/**
+	 * @param start position of the first available person in each bucket
+	 * @param available number of available people in each bucket
+	 */
+	AllocationPlan(int[] start, int[] available) {
+		this.start = start.clone();
+		this.next = start.clone();
+		this.available = available.clone();
+	}
+
+	/**
+	 * Reserves the people for an allocation.
+	 *
+	 * @param cap number of places of the allocation
+	 * @return the segments as triples (interval, first position, count)
+	 */
+	int[] reserve(int cap) {
+		int n = available.length;
+		int[] segments = new int[6 * n];
+		int count = 0;
+		int totAllocated = 0;
+		for (int i = n - 1; i >= 0; i--) {
+			int k = Math.max(0, Math.min((int) ((cap - totAllocated) * 0.4), available[i]));
+			count = take(segments, count, i, k);
+			totAllocated += k;
+		}
+		for (int i = n - 1; i >= 0 && totAllocated < cap; i--) {
+			int k = Math.min(cap - totAllocated, available[i]);
+			count = take(segments, count, i, k);
+			totAllocated += k;
+		}
+		return Arrays.copyOf(segments, count);
+	}
+
+	private int take(int[] segments, int count, int i, int k) {
+		if (k == 0) {
+			return count;
+		}
+		segments[count] = i;
+		segments[count + 1] = next[i];
+		segments[count + 2] = k;
+		next[i] += k;
+		available[i] -= k;
+		return count + 3;
+	}
+
+	/**
+	 * Number of people reserved by a list of segments.
+	 */
+	static int size(int[] segments) {
+		int n = 0;
+		for (int s = 2; s < segments.length; s += 3) {
+			n += segments[s];
+		}
+		return n;
+	}
+}
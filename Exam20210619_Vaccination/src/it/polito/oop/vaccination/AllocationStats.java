@@ -0,0 +1,106 @@
+package it.polito.oop.vaccination;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Snapshot of the allocation statistics, see {@link Vaccines#getAllocationStats}.
+ * <p>
+ * Intervals are indexed from the youngest to the oldest.
+ */
+public class AllocationStats {
+
+	private final int people;
+	private final int allocated;
+	private final String[] labels;
+	private final int[] count;
+	private final int[] intervalAllocated;
+
+	AllocationStats(int people, int allocated, String[] labels, int[] count, int[] intervalAllocated) {
+		this.people = people;
+		this.allocated = allocated;
+		this.labels = labels;
+		this.count = count;
+		this.intervalAllocated = intervalAllocated;
+	}
+
+	/**
+	 * Number of people registered.
+	 */
+	public int getPeople() {
+		return people;
+	}
+
+	/**
+	 * Number of people allocated.
+	 */
+	public int getAllocated() {
+		return allocated;
+	}
+
+	/**
+	 * Number of age intervals.
+	 */
+	public int getIntervals() {
+		return labels.length;
+	}
+
+	/**
+	 * Label of an age interval.
+	 */
+	public String getLabel(int i) {
+		return labels[i];
+	}
+
+	/**
+	 * Number of people registered in an age interval.
+	 */
+	public int getPeople(int i) {
+		return count[i];
+	}
+
+	/**
+	 * Number of people allocated in an age interval.
+	 */
+	public int getAllocated(int i) {
+		return intervalAllocated[i];
+	}
+
+	/**
+	 * Proportion of allocated people w.r.t. the people registered,
+	 * as {@link Vaccines#propAllocated}.
+	 */
+	public double propAllocated() {
+		return 1.0 * allocated / people;
+	}
+
+	/**
+	 * Proportion of allocated people by age interval, from the oldest,
+	 * as {@link Vaccines#propAllocatedAge}.
+	 */
+	public Map<String, Double> propAllocatedAge() {
+		Map<String, Double> res = new LinkedHashMap<>();
+		for (int i = labels.length - 1; i >= 0; i--) {
+			res.put(labels[i], 1.0 * intervalAllocated[i] / people);
+		}
+		return Collections.unmodifiableMap(res);
+	}
+
+	/**
+	 * Distribution of the allocated people among the age intervals,
+	 * from the oldest, as {@link Vaccines#distributionAllocated}.
+	 */
+	public Map<String, Double> distributionAllocated() {
+		Map<String, Double> res = new LinkedHashMap<>();
+		for (int i = labels.length - 1; i >= 0; i--) {
+			res.put(labels[i], 1.0 * intervalAllocated[i] / allocated);
+		}
+		return Collections.unmodifiableMap(res);
+	}
+
+	@Override
+	public String toString() {
+		return "allocated " + allocated + "/" + people + " " + propAllocatedAge();
+	}
+}
@@ -0,0 +1,191 @@
+package it.polito.oop.vaccination;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import it.polito.oop.vaccination.Person.STATUS;
+
+/**
+ * Store that keeps the people information in parallel arrays,
+ * one for each attribute, with first and last names encoded
+ * through a shared {@link NamePool} and SSNs packed as
+ * described in {@link SsnKey} (SSNs that cannot be packed
+ * are kept apart as strings). Birth years are kept in a {@code short},
+ * those out of its range are kept apart as well, so that the store
+ * returns the same years as {@link ObjectPersonStore}.
+ * <p>
+ * The allocation state of a person is packed in a single {@code int}:
+ * the lowest bit tells whether the person is allocated and the
+ * remaining bits hold the index of the hub plus one (0 for no hub).
+ * The day and the time slot are packed in a {@code short} as
+ * {@code (day + 1) << 6 | (slot + 1)}, 0 when not scheduled.
+ */
+class ColumnarPersonStore implements PersonStore {
+
+	private static final int ALLOCATED = 1;
+	/** year of the people whose year is kept apart */
+	private static final short OTHER_YEAR = Short.MIN_VALUE;
+
+	private final List<Hub> hubs;
+	private final NamePool names = new NamePool();
+	private int size;
+	private long[] ssnHi = new long[1024];
+	private long[] ssnLo = new long[1024];
+	private final Map<Integer, String> others = new HashMap<>();
+	private int[] first = new int[1024];
+	private int[] last = new int[1024];
+	private short[] year = new short[1024];
+	private final Map<Integer, Integer> otherYears = new HashMap<>();
+	private AtomicIntegerArray state = new AtomicIntegerArray(1024);
+	private short[] when = new short[1024];
+
+	/**
+	 * @param hubs the hubs of the system, by {@link Hub#id}
+	 */
+	ColumnarPersonStore(List<Hub> hubs) {
+		this.hubs = hubs;
+	}
+
+	@Override
+	public int add(String firstName, String lastName, String ssn, int year) {
+		if (size == ssnHi.length) {
+			grow(size * 2);
+		}
+		if (SsnKey.packable(ssn)) {
+			ssnHi[size] = SsnKey.hi(ssn);
+			ssnLo[size] = SsnKey.lo(ssn);
+		} else {
+			ssnHi[size] = -1;
+			others.put(size, ssn);
+		}
+		first[size] = names.code(firstName);
+		last[size] = names.code(lastName);
+		if (year > OTHER_YEAR && year <= Short.MAX_VALUE) {
+			this.year[size] = (short) year;
+		} else {
+			this.year[size] = OTHER_YEAR;
+			otherYears.put(size, year);
+		}
+		return size++;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public void ensureCapacity(int n) {
+		if (size + n > ssnHi.length) {
+			grow(Math.max(size + n, ssnHi.length * 2));
+		}
+	}
+
+	private void grow(int n) {
+		ssnHi = Arrays.copyOf(ssnHi, n);
+		ssnLo = Arrays.copyOf(ssnLo, n);
+		first = Arrays.copyOf(first, n);
+		last = Arrays.copyOf(last, n);
+		year = Arrays.copyOf(year, n);
+		when = Arrays.copyOf(when, n);
+		AtomicIntegerArray old = state;
+		state = new AtomicIntegerArray(n);
+		for (int i = 0; i < size; i++) {
+			state.set(i, old.get(i));
+		}
+	}
+
+	@Override
+	public String getSsn(int row) {
+		return ssnHi[row] < 0 ? others.get(row) : SsnKey.unpack(ssnHi[row], ssnLo[row]);
+	}
+
+	@Override
+	public long ssnHi(int row) {
+		return ssnHi[row];
+	}
+
+	@Override
+	public long ssnLo(int row) {
+		return ssnLo[row];
+	}
+
+	@Override
+	public int compareSsn(int a, int b) {
+		if (ssnHi[a] < 0 || ssnHi[b] < 0) {
+			return getSsn(a).compareTo(getSsn(b));
+		}
+		int c = Long.compare(ssnHi[a], ssnHi[b]);
+		return c != 0 ? c : Long.compare(ssnLo[a], ssnLo[b]);
+	}
+
+	@Override
+	public String getFirstName(int row) {
+		return names.name(first[row]);
+	}
+
+	@Override
+	public String getLastName(int row) {
+		return names.name(last[row]);
+	}
+
+	@Override
+	public int getYear(int row) {
+		return year[row] == OTHER_YEAR ? otherYears.get(row) : year[row];
+	}
+
+	@Override
+	public STATUS getSt(int row) {
+		return (state.get(row) & ALLOCATED) != 0 ? STATUS.ALLOCATED : STATUS.NOT_ALLOCATED;
+	}
+
+	@Override
+	public Hub getHub(int row) {
+		int h = state.get(row) >>> 1;
+		return h == 0 ? null : hubs.get(h - 1);
+	}
+
+	@Override
+	public boolean allocate(int row, Hub h) {
+		int s;
+		do {
+			s = state.get(row);
+			if ((s & ALLOCATED) != 0) {
+				return false;
+			}
+		} while (!state.compareAndSet(row, s, (h.id + 1) << 1 | ALLOCATED));
+		return true;
+	}
+
+	@Override
+	public boolean clear(int row) {
+		int s;
+		do {
+			s = state.get(row);
+			if ((s & ALLOCATED) == 0) {
+				return false;
+			}
+		} while (!state.compareAndSet(row, s, s & ~ALLOCATED));
+		when[row] = 0;
+		return true;
+	}
+
+	@Override
+	public void schedule(int row, int d, int j) {
+		when[row] = (short) ((d + 1) << 6 | (j + 1));
+	}
+
+	@Override
+	public int getDay(int row) {
+		return (when[row] >> 6) - 1;
+	}
+
+	@Override
+	public String getSlot(int row) {
+		int j = (when[row] & 63) - 1;
+		return j < 0 ? null : SlotTable.label(j);
+	}
+}
@@ -0,0 +1,166 @@
+package it.polito.oop.vaccination;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * People lines parsed from a line-aligned byte range of a CSV file.
+ * <p>
+ * Chunks are parsed independently of each other and then merged
+ * in file order, see {@link Vaccines#loadPeopleParallel}.
+ */
+class CsvChunk {
+
+	/** the line has four non empty fields */
+	static final byte OK = 0;
+	/** the line has a wrong number of fields or empty fields */
+	static final byte BAD = 1;
+	/** the line has a birth year that is not a number */
+	static final byte BAD_YEAR = 2;
+
+	private final MappedByteBuffer buf;
+	private final CharsetDecoder decoder = decoder();
+
+	/** number of lines parsed, up to the first empty line */
+	int lines;
+	/** the chunk contains an empty line that ends the file content */
+	boolean ended;
+
+	int[] start = new int[1024];
+	int[] end = new int[1024];
+	byte[] state = new byte[1024];
+	String[] ssn = new String[1024];
+	String[] last = new String[1024];
+	String[] first = new String[1024];
+	int[] year = new int[1024];
+
+	private CsvChunk(MappedByteBuffer buf) {
+		this.buf = buf;
+	}
+
+	/**
+	 * Decoder of the CSV files, shared by the sequential and the parallel load
+	 * so that both reject malformed UTF-8 content.
+	 */
+	static CharsetDecoder decoder() {
+		return StandardCharsets.UTF_8.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPORT)
+				.onUnmappableCharacter(CodingErrorAction.REPORT);
+	}
+
+	/**
+	 * Finds the first position after {@code pos} that begins a new line.
+	 *
+	 * @param ch the file channel
+	 * @param pos a position in the file
+	 * @param size size of the file
+	 * @return the position after the first {@code '\n'} found, or the file size
+	 * @throws IOException in case of IO error
+	 */
+	static long lineStart(FileChannel ch, long pos, long size) throws IOException {
+		ByteBuffer b = ByteBuffer.allocate(4096);
+		while (pos < size) {
+			b.clear();
+			int n = ch.read(b, pos);
+			if (n < 0) {
+				break;
+			}
+			for (int i = 0; i < n; i++) {
+				if (b.get(i) == '\n') {
+					return pos + i + 1;
+				}
+			}
+			pos += n;
+		}
+		return size;
+	}
+
+	/**
+	 * Parses the lines in a byte range of the file.
+	 * Lines end with {@code '\n'}, {@code '\r'} or {@code "\r\n"},
+	 * as for {@link java.io.BufferedReader#readLine}.
+	 *
+	 * @param ch the file channel
+	 * @param from first byte of the range, at the beginning of a line
+	 * @param to end of the range (excluded), at the beginning of a line
+	 * @return the parsed chunk
+	 * @throws IOException in case of IO error, or if a line is not valid UTF-8
+	 */
+	static CsvChunk parse(FileChannel ch, long from, long to) throws IOException {
+		CsvChunk c = new CsvChunk(ch.map(FileChannel.MapMode.READ_ONLY, from, to - from));
+		c.parse();
+		return c;
+	}
+
+	private void parse() throws CharacterCodingException {
+		String[] data = new String[4];
+		int len = buf.limit();
+		int pos = 0;
+		while (pos < len) {
+			int eol = pos;
+			byte b = 0;
+			while (eol < len && (b = buf.get(eol)) != '\n' && b != '\r') {
+				eol++;
+			}
+			if (eol == pos && eol < len) {
+				ended = true;
+				return;
+			}
+			add(pos, eol, data);
+			pos = eol + 1;
+			if (b == '\r' && pos < len && buf.get(pos) == '\n') {
+				pos++;
+			}
+		}
+	}
+
+	private void add(int from, int to, String[] data) throws CharacterCodingException {
+		if (lines == start.length) {
+			int n = lines * 2;
+			start = Arrays.copyOf(start, n);
+			end = Arrays.copyOf(end, n);
+			state = Arrays.copyOf(state, n);
+			ssn = Arrays.copyOf(ssn, n);
+			last = Arrays.copyOf(last, n);
+			first = Arrays.copyOf(first, n);
+			year = Arrays.copyOf(year, n);
+		}
+		int i = lines++;
+		start[i] = from;
+		end[i] = to;
+		int n = Vaccines.splitFields(line(i), data);
+		if (n != 4 || data[0].isEmpty() || data[1].isEmpty() || data[2].isEmpty() || data[3].isEmpty()) {
+			state[i] = BAD;
+			return;
+		}
+		ssn[i] = data[0];
+		last[i] = data[1];
+		first[i] = data[2];
+		try {
+			year[i] = Integer.parseInt(data[3]);
+			state[i] = OK;
+		} catch (NumberFormatException e) {
+			state[i] = BAD_YEAR;
+		}
+	}
+
+	/**
+	 * Decodes the text of a line of the chunk.
+	 *
+	 * @param i line index in the chunk
+	 * @return the line, without terminator
+	 * @throws CharacterCodingException if the line is not valid UTF-8
+	 */
+	String line(int i) throws CharacterCodingException {
+		ByteBuffer b = buf.duplicate();
+		b.limit(end[i]).position(start[i]);
+		return decoder.decode(b).toString();
+	}
+}
@@ -0,0 +1,125 @@
+package it.polito.oop.vaccination;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Registry index based on an open-addressing hash table of rows.
+ * <p>
+ * SSNs that can be packed (see {@link SsnKey}) are hashed and compared
+ * through their packed encoding as provided by the store, so the table
+ * holds just the rows; other SSNs are kept in a plain hash map.
+ * The view sorted by SSN is built only when requested.
+ */
+class HashRegistryIndex implements RegistryIndex {
+
+	private static final int EMPTY = -1;
+
+	private final PersonStore store;
+	private int[] table = new int[1024];
+	private int count;
+	private final Map<String, Integer> others = new HashMap<>();
+	private volatile int[] ordered;
+
+	HashRegistryIndex(PersonStore store) {
+		this.store = store;
+		Arrays.fill(table, EMPTY);
+	}
+
+	@Override
+	public int get(String ssn) {
+		if (!SsnKey.packable(ssn)) {
+			Integer row = others.get(ssn);
+			return row == null ? -1 : row;
+		}
+		return table[slot(SsnKey.hi(ssn), SsnKey.lo(ssn))];
+	}
+
+	@Override
+	public int putIfAbsent(String ssn, int row) {
+		if (!SsnKey.packable(ssn)) {
+			Integer old = others.putIfAbsent(ssn, row);
+			if (old != null) {
+				return old;
+			}
+		} else {
+			// resized before probing, as the new row is not in the store yet
+			if ((count + 1) * 2 > table.length) {
+				resize(table.length * 2);
+			}
+			int i = slot(SsnKey.hi(ssn), SsnKey.lo(ssn));
+			if (table[i] != EMPTY) {
+				return table[i];
+			}
+			table[i] = row;
+			count++;
+		}
+		ordered = null;
+		return -1;
+	}
+
+	@Override
+	public void ensureCapacity(int n) {
+		int capacity = table.length;
+		while ((long) (count + n) * 2 > capacity) {
+			capacity *= 2;
+		}
+		if (capacity > table.length) {
+			resize(capacity);
+		}
+	}
+
+	/**
+	 * Finds the slot holding the given key, or the empty slot where it should go.
+	 */
+	private int slot(long hi, long lo) {
+		int mask = table.length - 1;
+		int i = SsnKey.hash(hi, lo) & mask;
+		int row;
+		while ((row = table[i]) != EMPTY && (store.ssnHi(row) != hi || store.ssnLo(row) != lo)) {
+			i = (i + 1) & mask;
+		}
+		return i;
+	}
+
+	private void resize(int capacity) {
+		int[] old = table;
+		table = new int[capacity];
+		Arrays.fill(table, EMPTY);
+		int mask = capacity - 1;
+		for (int row : old) {
+			if (row != EMPTY) {
+				int i = SsnKey.hash(store.ssnHi(row), store.ssnLo(row)) & mask;
+				while (table[i] != EMPTY) {
+					i = (i + 1) & mask;
+				}
+				table[i] = row;
+			}
+		}
+	}
+
+	@Override
+	public int size() {
+		return count + others.size();
+	}
+
+	@Override
+	public int[] ordered() {
+		if (ordered == null) {
+			int[] rows = new int[size()];
+			int n = 0;
+			for (int row : table) {
+				if (row != EMPTY) {
+					rows[n++] = row;
+				}
+			}
+			for (int row : others.values()) {
+				rows[n++] = row;
+			}
+			RowSort.sort(store, rows, 0, n);
+			ordered = rows;
+		}
+		return ordered;
+	}
+}
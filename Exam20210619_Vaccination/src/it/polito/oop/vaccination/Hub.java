@@ -1,9 +1,21 @@
 package it.polito.oop.vaccination;
 
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
 public class Hub {
 
 	String name;
 	int doc,nurse,other;
+	/** position of the hub in order of definition */
+	int id;
+	/** places taken by allocations and bookings for each day of the week, until cleared */
+	final AtomicIntegerArray taken = new AtomicIntegerArray(7);
+	/** people assigned to each slot of the week, see {@link SlotTable#slot} */
+	volatile AtomicIntegerArray occupancy = new AtomicIntegerArray(0);
+	/** slots to assign for each day of the week */
+	volatile SlotQueue[] queues = new SlotQueue[0];
+	/** latency of the allocations of the hub, see {@link Vaccines#allocate} */
+	final LatencyHistogram latency = new LatencyHistogram();
 
 	public Hub(String name) {
 		super();
@@ -18,34 +30,123 @@ public class Hub {
 		this.name = name;
 	}
 
-	public int getDoc() {
+	public synchronized int getDoc() {
 		return doc;
 	}
 
-	public void setDoc(int doc) {
+	public synchronized void setDoc(int doc) {
 		this.doc = doc;
 	}
 
-	public int getNurse() {
+	public synchronized int getNurse() {
 		return nurse;
 	}
 
-	public void setNurse(int nurse) {
+	public synchronized void setNurse(int nurse) {
 		this.nurse = nurse;
 	}
 
-	public int getOther() {
+	public synchronized int getOther() {
 		return other;
 	}
 
-	public void setOther(int other) {
+	public synchronized void setOther(int other) {
+		this.other = other;
+	}
+
+	/**
+	 * Sets the whole staffing of the hub at once.
+	 */
+	public synchronized void setStaff(int doc, int nurse, int other) {
+		this.doc = doc;
+		this.nurse = nurse;
 		this.other = other;
 	}
 
-	public int getCapacity() {
+	public synchronized int getCapacity() {
+		return capacity(doc, nurse, other);
+	}
+
+	/**
+	 * Hourly capacity of a hub with the given staffing.
+	 */
+	static int capacity(int doc, int nurse, int other) {
 		int res = Math.min(10 *doc ,Math.min( 12 *nurse , 20*other)); 
 		return res;
 	}
+
+	/**
+	 * Takes up to {@code n} places of a day, without exceeding
+	 * {@code available} places taken in total.
+	 *
+	 * @return the number of places taken, possibly 0
+	 */
+	int reserve(int d, int n, int available) {
+		int t, k;
+		do {
+			t = taken.get(d);
+			k = Math.min(n, available - t);
+			if (k <= 0) {
+				return 0;
+			}
+		} while (!taken.compareAndSet(d, t, t + k));
+		return k;
+	}
+
+	/**
+	 * Gives back places of a day taken by {@link #reserve} and not used.
+	 */
+	void release(int d, int n) {
+		if (n > 0) {
+			taken.addAndGet(d, -n);
+		}
+	}
+
+	/**
+	 * Empties all the slots, sized for the given table.
+	 */
+	void resetSlots(SlotTable slots) {
+		occupancy = new AtomicIntegerArray(slots.total());
+		resetQueues(slots);
+	}
+
+	/**
+	 * Rebuilds the queues of the slots from their current occupancy.
+	 */
+	void resetQueues(SlotTable slots) {
+		SlotQueue[] q = new SlotQueue[7];
+		for (int d = 0; d < 7; d++) {
+			q[d] = new SlotQueue(this, slots, d);
+		}
+		queues = q;
+	}
+
+	/**
+	 * Assigns a person allocated on a day to a time slot.
+	 *
+	 * @return the slot of the day or -1 if all the slots are full
+	 */
+	int schedule(int d) {
+		return queues[d].next();
+	}
+
+	/**
+	 * Assigns a person to a slot of the week, if less than
+	 * {@code capacity} people have been assigned to it so far.
+	 *
+	 * @return {@code true} if the person has been assigned
+	 */
+	boolean take(int slot, int capacity) {
+		AtomicIntegerArray o = occupancy;
+		int n;
+		do {
+			n = o.get(slot);
+			if (n >= capacity) {
+				return false;
+			}
+		} while (!o.compareAndSet(slot, n, n + 1));
+		return true;
+	}
 	
 	
 	
@@ -0,0 +1,258 @@
+package it.polito.oop.vaccination;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of the changes of allocation status,
+ * to be replayed on top of a snapshot (see {@link Vaccines#openJournal}).
+ * <p>
+ * Records are collected in memory by each operation and committed
+ * at its end: all the records pending at that time, possibly from
+ * several threads, are written together as a batch made of its length,
+ * its CRC32 checksum and the records. The file is forced to disk once
+ * at least a given number of records has been written since the last
+ * time, so that the cost of syncing is shared by many allocations.
+ * <p>
+ * A record is a type byte followed, for allocations and bookings, by
+ * the hub index, the day, the slot of the day and the row of the person
+ * in the store, which a snapshot preserves.
+ * Batches partially written by a crash are ignored on replay.
+ * <p>
+ * Once a batch cannot be written, the journal is failed: the following
+ * records are discarded, as they could not be replayed after the broken
+ * batch, and the failure is reported by {@link #check} and {@link #close}.
+ */
+class Journal {
+
+	static final byte ALLOCATE = 1;
+	static final byte BOOK = 2;
+	static final byte CLEAR = 3;
+
+	private static final int BATCH_HEADER = 8;
+	private static final int RECORD = 11;
+
+	private final FileChannel ch;
+	private final int syncEvery;
+	private final CRC32 crc = new CRC32();
+	private ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+	private int pending;
+	private int unsynced;
+	/** the error that failed the journal, if any */
+	private IOException failure;
+	private final ThreadLocal<Batch> batches = ThreadLocal.withInitial(Batch::new);
+
+	/**
+	 * Opens a journal file, appending to its content.
+	 *
+	 * @param file path of the journal
+	 * @param syncEvery records to write before forcing the file to disk,
+	 *        0 to force it only when closed
+	 * @throws IOException in case of IO error
+	 */
+	Journal(Path file, int syncEvery) throws IOException {
+		this.ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.APPEND);
+		this.syncEvery = syncEvery;
+		buf.position(BATCH_HEADER);
+	}
+
+	/**
+	 * Returns the empty batch of the current thread, to collect the
+	 * records of an operation until it is appended.
+	 */
+	Batch batch() {
+		Batch b = batches.get();
+		b.size = 0;
+		b.records = 0;
+		return b;
+	}
+
+	/**
+	 * Records of a single operation, collected without locking.
+	 */
+	static class Batch {
+		byte[] data = new byte[32 * RECORD];
+		int size;
+		int records;
+
+		void allocate(byte type, int row, Hub h, int d, int j) {
+			ensure(RECORD);
+			byte[] data = this.data;
+			int p = size;
+			data[p] = type;
+			data[p + 1] = (byte) (h.id >>> 24);
+			data[p + 2] = (byte) (h.id >>> 16);
+			data[p + 3] = (byte) (h.id >>> 8);
+			data[p + 4] = (byte) h.id;
+			data[p + 5] = (byte) d;
+			data[p + 6] = (byte) j;
+			data[p + 7] = (byte) (row >>> 24);
+			data[p + 8] = (byte) (row >>> 16);
+			data[p + 9] = (byte) (row >>> 8);
+			data[p + 10] = (byte) row;
+			size = p + RECORD;
+			records++;
+		}
+
+		void clear() {
+			ensure(1);
+			data[size++] = CLEAR;
+			records++;
+		}
+
+		private void ensure(int n) {
+			if (size + n > data.length) {
+				data = Arrays.copyOf(data, Math.max(size + n, data.length * 2));
+			}
+		}
+	}
+
+	/**
+	 * Adds the records of an operation to the pending ones.
+	 */
+	synchronized void append(Batch b) {
+		if (failure != null || b.records == 0) {
+			return;
+		}
+		if (buf.remaining() < b.size) {
+			ByteBuffer n = ByteBuffer.allocate(Math.max(buf.capacity() * 2, buf.position() + b.size));
+			buf.flip();
+			n.put(buf);
+			buf = n;
+		}
+		buf.put(b.data, 0, b.size);
+		pending += b.records;
+	}
+
+	/**
+	 * Writes the pending records as a batch, forcing the file to disk
+	 * if enough records have been written since the last time.
+	 * An IO error fails the journal.
+	 */
+	synchronized void commit() {
+		if (pending == 0 || failure != null) {
+			return;
+		}
+		int length = buf.position() - BATCH_HEADER;
+		crc.reset();
+		crc.update(buf.array(), BATCH_HEADER, length);
+		buf.putInt(0, length);
+		buf.putInt(4, (int) crc.getValue());
+		buf.flip();
+		try {
+			while (buf.hasRemaining()) {
+				ch.write(buf);
+			}
+			unsynced += pending;
+			if (syncEvery > 0 && unsynced >= syncEvery) {
+				ch.force(false);
+				unsynced = 0;
+			}
+		} catch (IOException e) {
+			failure = e;
+		} finally {
+			buf.clear();
+			buf.position(BATCH_HEADER);
+			pending = 0;
+		}
+	}
+
+	/**
+	 * Reports the failure of the journal, if any.
+	 *
+	 * @throws IOException if some records could not be written
+	 */
+	synchronized void check() throws IOException {
+		if (failure != null) {
+			throw new IOException("Journal not written", failure);
+		}
+	}
+
+	/**
+	 * Discards the whole content of the journal, once it is covered by a snapshot.
+	 *
+	 * @throws IOException in case of IO error
+	 */
+	synchronized void truncate() throws IOException {
+		buf.clear();
+		buf.position(BATCH_HEADER);
+		pending = 0;
+		unsynced = 0;
+		ch.truncate(0);
+		ch.force(true);
+	}
+
+	/**
+	 * Commits the pending records and closes the journal, forcing it to disk.
+	 *
+	 * @throws IOException in case of IO error, or if the journal has failed
+	 */
+	synchronized void close() throws IOException {
+		try {
+			commit();
+			check();
+			ch.force(false);
+		} finally {
+			ch.close();
+		}
+	}
+
+	/**
+	 * Receives the records read from a journal.
+	 */
+	interface Visitor {
+		void allocate(byte type, int row, int hub, int d, int j);
+
+		void clear();
+	}
+
+	/**
+	 * Reads the records of a journal, up to the first incomplete or corrupted batch.
+	 *
+	 * @param ch channel of the journal file
+	 * @param v the receiver of the records
+	 * @return the number of records read
+	 * @throws IOException in case of IO error
+	 */
+	static long replay(FileChannel ch, Visitor v) throws IOException {
+		long size = ch.size();
+		long pos = 0;
+		long count = 0;
+		ByteBuffer header = ByteBuffer.allocate(BATCH_HEADER);
+		CRC32 crc = new CRC32();
+		while (pos + BATCH_HEADER <= size) {
+			header.clear();
+			ch.read(header, pos);
+			int length = header.getInt(0);
+			if (length < 0 || pos + BATCH_HEADER + length > size) {
+				break;
+			}
+			ByteBuffer batch = ch.map(FileChannel.MapMode.READ_ONLY, pos + BATCH_HEADER, length);
+			crc.reset();
+			crc.update(batch.duplicate());
+			if ((int) crc.getValue() != header.getInt(4)) {
+				break;
+			}
+			while (batch.hasRemaining()) {
+				byte type = batch.get();
+				if (type == CLEAR) {
+					v.clear();
+				} else {
+					int hub = batch.getInt();
+					int d = batch.get();
+					int j = batch.get();
+					v.allocate(type, batch.getInt(), hub, d, j);
+				}
+				count++;
+			}
+			pos += BATCH_HEADER + length;
+		}
+		return count;
+	}
+}
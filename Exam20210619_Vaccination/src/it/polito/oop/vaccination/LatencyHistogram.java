@@ -0,0 +1,120 @@
+package it.polito.oop.vaccination;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies in nanoseconds, recorded without allocating
+ * or locking.
+ * <p>
+ * Buckets are log-linear as in HDR histograms: values below 32 have a
+ * bucket each, larger values are split into powers of two, each divided
+ * into 32 buckets, so the value of a percentile is known within about 3%.
+ */
+class LatencyHistogram {
+
+	private static final int SUB_BITS = 5;
+	private static final int SUB = 1 << SUB_BITS;
+	private static final int BUCKETS = (64 - SUB_BITS) * SUB;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Records a latency.
+	 *
+	 * @param nanos the latency, negative values are recorded as 0
+	 */
+	void record(long nanos) {
+		long v = Math.max(nanos, 0);
+		counts.incrementAndGet(bucket(v));
+		sum.addAndGet(v);
+		long m;
+		while (v > (m = max.get()) && !max.compareAndSet(m, v)) {
+			// retry
+		}
+	}
+
+	/**
+	 * Copies the histogram, while latencies may still be recorded.
+	 */
+	LatencyHistogram copy() {
+		LatencyHistogram res = new LatencyHistogram();
+		for (int k = 0; k < BUCKETS; k++) {
+			res.counts.set(k, counts.get(k));
+		}
+		res.sum.set(sum.get());
+		res.max.set(max.get());
+		return res;
+	}
+
+	/**
+	 * Number of latencies recorded.
+	 */
+	long count() {
+		long n = 0;
+		for (int k = 0; k < BUCKETS; k++) {
+			n += counts.get(k);
+		}
+		return n;
+	}
+
+	/**
+	 * Mean of the latencies recorded, 0 if none.
+	 */
+	double mean() {
+		long n = count();
+		return n == 0 ? 0 : 1.0 * sum.get() / n;
+	}
+
+	/**
+	 * Highest latency recorded, 0 if none.
+	 */
+	long max() {
+		return max.get();
+	}
+
+	/**
+	 * Latency below which the given fraction of the latencies fall,
+	 * as the upper bound of its bucket.
+	 *
+	 * @param q fraction between 0 and 1
+	 * @return the latency, 0 if none has been recorded
+	 */
+	long percentile(double q) {
+		long n = count();
+		if (n == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(q * n));
+		long seen = 0;
+		for (int k = 0; k < BUCKETS; k++) {
+			seen += counts.get(k);
+			if (seen >= rank) {
+				return Math.min(upper(k), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	private static int bucket(long v) {
+		if (v < SUB) {
+			return (int) v;
+		}
+		int exp = 63 - Long.numberOfLeadingZeros(v);
+		return (exp - SUB_BITS + 1) * SUB + (int) ((v >>> (exp - SUB_BITS)) & (SUB - 1));
+	}
+
+	/**
+	 * Highest value falling in a bucket.
+	 */
+	private static long upper(int k) {
+		if (k < SUB) {
+			return k;
+		}
+		int shift = k / SUB - 1;
+		long lower = (long) (SUB + k % SUB) << shift;
+		return lower + (1L << shift) - 1;
+	}
+}
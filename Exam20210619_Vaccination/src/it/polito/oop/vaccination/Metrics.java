@@ -0,0 +1,70 @@
+package it.polito.oop.vaccination;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Operational counters of a {@link Vaccines} system, see {@link Vaccines#getMetrics}.
+ * <p>
+ * Counters are updated atomically by the operations, without allocating,
+ * and are never reset by {@link Vaccines#clearAllocation}. The latency of
+ * allocations is kept by each hub (see {@link Hub#latency}).
+ */
+class Metrics {
+
+	/** person lines read by the loads */
+	final AtomicLong rowsRead = new AtomicLong();
+	/** person lines skipped by the loads, as reported to the load listener */
+	final AtomicLong rowsRejected = new AtomicLong();
+	/** people allocated in each age interval since the intervals were defined */
+	private volatile AtomicLongArray allocations = new AtomicLongArray(1);
+
+	/**
+	 * Counts the outcome of a load.
+	 */
+	void loaded(long read, long rejected) {
+		rowsRead.addAndGet(read);
+		rowsRejected.addAndGet(rejected);
+	}
+
+	/**
+	 * Restarts the allocation counts for a new set of age intervals.
+	 *
+	 * @param n number of intervals
+	 */
+	void intervals(int n) {
+		allocations = new AtomicLongArray(n);
+	}
+
+	/**
+	 * Counts people allocated in an age interval.
+	 */
+	void allocated(int i, int n) {
+		if (n > 0) {
+			allocations.addAndGet(i, n);
+		}
+	}
+
+	/**
+	 * Counts the people allocated by a list of segments of a plan.
+	 *
+	 * @param segments the segments from {@link AllocationPlan#reserve}
+	 */
+	void allocated(int[] segments) {
+		for (int s = 0; s < segments.length; s += 3) {
+			allocated(segments[s], segments[s + 2]);
+		}
+	}
+
+	/**
+	 * People allocated in each age interval.
+	 */
+	long[] allocations() {
+		AtomicLongArray a = allocations;
+		long[] res = new long[a.length()];
+		for (int i = 0; i < res.length; i++) {
+			res[i] = a.get(i);
+		}
+		return res;
+	}
+}
@@ -0,0 +1,72 @@
+package it.polito.oop.vaccination;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToDoubleBiFunction;
+
+/**
+ * Exposes the metrics of a system over JMX, taking a new
+ * snapshot at each attribute read.
+ */
+class MetricsBean implements VaccinesMetricsMXBean {
+
+	private final Vaccines v;
+
+	MetricsBean(Vaccines v) {
+		this.v = v;
+	}
+
+	@Override
+	public long getRowsRead() {
+		return v.getMetrics().getRowsRead();
+	}
+
+	@Override
+	public long getRowsRejected() {
+		return v.getMetrics().getRowsRejected();
+	}
+
+	@Override
+	public Map<String, Long> getAllocations() {
+		MetricsSnapshot m = v.getMetrics();
+		Map<String, Long> res = new LinkedHashMap<>();
+		for (int i = 0; i < m.getIntervals(); i++) {
+			res.put(m.getLabel(i), m.getAllocations(i));
+		}
+		return res;
+	}
+
+	@Override
+	public Map<String, Long> getAllocateCount() {
+		MetricsSnapshot m = v.getMetrics();
+		Map<String, Long> res = new LinkedHashMap<>();
+		for (String h : m.getHubs()) {
+			res.put(h, m.getAllocateCount(h));
+		}
+		return res;
+	}
+
+	@Override
+	public Map<String, Double> getAllocateP50() {
+		return byHub((m, h) -> m.getAllocatePercentile(h, 0.5));
+	}
+
+	@Override
+	public Map<String, Double> getAllocateP99() {
+		return byHub((m, h) -> m.getAllocatePercentile(h, 0.99));
+	}
+
+	@Override
+	public Map<String, Double> getAllocateMax() {
+		return byHub(MetricsSnapshot::getAllocateMax);
+	}
+
+	private Map<String, Double> byHub(ToDoubleBiFunction<MetricsSnapshot, String> nanos) {
+		MetricsSnapshot m = v.getMetrics();
+		Map<String, Double> res = new LinkedHashMap<>();
+		for (String h : m.getHubs()) {
+			res.put(h, nanos.applyAsDouble(m, h) / 1000);
+		}
+		return res;
+	}
+}
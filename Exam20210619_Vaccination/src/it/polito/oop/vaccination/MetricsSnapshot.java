@@ -0,0 +1,124 @@
+package it.polito.oop.vaccination;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Snapshot of the operational metrics, see {@link Vaccines#getMetrics}.
+ * <p>
+ * Intervals are indexed from the youngest to the oldest, as in
+ * {@link AllocationStats}; latencies are in nanoseconds.
+ */
+public class MetricsSnapshot {
+
+	private final long rowsRead;
+	private final long rowsRejected;
+	private final String[] labels;
+	private final long[] allocations;
+	private final Map<String, LatencyHistogram> latency;
+
+	MetricsSnapshot(long rowsRead, long rowsRejected, String[] labels, long[] allocations,
+			Map<String, LatencyHistogram> latency) {
+		this.rowsRead = rowsRead;
+		this.rowsRejected = rowsRejected;
+		this.labels = labels;
+		this.allocations = allocations;
+		this.latency = latency;
+	}
+
+	/**
+	 * Number of person lines read by the loads, excluding the headers.
+	 */
+	public long getRowsRead() {
+		return rowsRead;
+	}
+
+	/**
+	 * Number of person lines skipped by the loads, because invalid or
+	 * duplicate, as reported to the load listener.
+	 */
+	public long getRowsRejected() {
+		return rowsRejected;
+	}
+
+	/**
+	 * Number of age intervals.
+	 */
+	public int getIntervals() {
+		return labels.length;
+	}
+
+	/**
+	 * Label of an age interval.
+	 */
+	public String getLabel(int i) {
+		return labels[i];
+	}
+
+	/**
+	 * Number of people allocated in an age interval since the intervals
+	 * were defined, including the allocations since cleared.
+	 */
+	public long getAllocations(int i) {
+		return allocations[i];
+	}
+
+	/**
+	 * Names of the hubs.
+	 */
+	public Collection<String> getHubs() {
+		return Collections.unmodifiableSet(latency.keySet());
+	}
+
+	/**
+	 * Number of invocations of {@link Vaccines#allocate} for a hub.
+	 */
+	public long getAllocateCount(String hub) {
+		return latency.get(hub).count();
+	}
+
+	/**
+	 * Mean latency of {@link Vaccines#allocate} for a hub.
+	 */
+	public double getAllocateMean(String hub) {
+		return latency.get(hub).mean();
+	}
+
+	/**
+	 * Highest latency of {@link Vaccines#allocate} for a hub.
+	 */
+	public long getAllocateMax(String hub) {
+		return latency.get(hub).max();
+	}
+
+	/**
+	 * Latency of {@link Vaccines#allocate} for a hub below which
+	 * the given fraction of the invocations fall, within about 3%.
+	 *
+	 * @param hub name of the hub
+	 * @param q fraction between 0 and 1, e.g. 0.99
+	 * @return the latency, 0 if the hub has never been allocated
+	 */
+	public long getAllocatePercentile(String hub, double q) {
+		return latency.get(hub).percentile(q);
+	}
+
+	@Override
+	public String toString() {
+		Map<String, Long> byInterval = new LinkedHashMap<>();
+		for (int i = 0; i < labels.length; i++) {
+			byInterval.put(labels[i], allocations[i]);
+		}
+		StringBuilder sb = new StringBuilder();
+		sb.append("rows ").append(rowsRead).append(" rejected ").append(rowsRejected)
+			.append(" allocations ").append(byInterval);
+		for (Map.Entry<String, LatencyHistogram> e : latency.entrySet()) {
+			LatencyHistogram h = e.getValue();
+			sb.append(String.format(" %s: n=%d p50=%dns p99=%dns max=%dns", e.getKey(), h.count(),
+					h.percentile(0.5), h.percentile(0.99), h.max()));
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,43 @@
+package it.polito.oop.vaccination;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dictionary of names, each distinct name is stored once
+ * and identified by an integer code.
+ */
+class NamePool {
+
+	private final Map<String, Integer> codes = new HashMap<>();
+	private final List<String> names = new ArrayList<>();
+
+	/**
+	 * Retrieves the code of a name, adding it to the pool if missing.
+	 */
+	int code(String name) {
+		Integer c = codes.get(name);
+		if (c == null) {
+			c = names.size();
+			codes.put(name, c);
+			names.add(name);
+		}
+		return c;
+	}
+
+	/**
+	 * Retrieves the name with the given code.
+	 */
+	String name(int code) {
+		return names.get(code);
+	}
+
+	/**
+	 * Number of distinct names in the pool.
+	 */
+	int size() {
+		return names.size();
+	}
+}
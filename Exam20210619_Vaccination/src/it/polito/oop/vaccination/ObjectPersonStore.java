@@ -0,0 +1,106 @@
+package it.polito.oop.vaccination;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import it.polito.oop.vaccination.Person.STATUS;
+
+/**
+ * Store that keeps a {@link Person} object for each person.
+ */
+class ObjectPersonStore implements PersonStore {
+
+	private static final AtomicReferenceFieldUpdater<Person, STATUS> ST =
+			AtomicReferenceFieldUpdater.newUpdater(Person.class, STATUS.class, "st");
+
+	private final ArrayList<Person> people = new ArrayList<>();
+
+	@Override
+	public int add(String firstName, String lastName, String ssn, int year) {
+		people.add(new Person(firstName, lastName, ssn, year));
+		return people.size() - 1;
+	}
+
+	@Override
+	public int size() {
+		return people.size();
+	}
+
+	@Override
+	public void ensureCapacity(int n) {
+		people.ensureCapacity(people.size() + n);
+	}
+
+	@Override
+	public String getSsn(int row) {
+		return people.get(row).getSsn();
+	}
+
+	@Override
+	public String getFirstName(int row) {
+		return people.get(row).getFirstName();
+	}
+
+	@Override
+	public String getLastName(int row) {
+		return people.get(row).getLastName();
+	}
+
+	@Override
+	public int getYear(int row) {
+		return people.get(row).getYear();
+	}
+
+	@Override
+	public STATUS getSt(int row) {
+		return people.get(row).getSt();
+	}
+
+	@Override
+	public Hub getHub(int row) {
+		return people.get(row).getHub();
+	}
+
+	@Override
+	public boolean allocate(int row, Hub h) {
+		Person p = people.get(row);
+		if (!ST.compareAndSet(p, STATUS.NOT_ALLOCATED, STATUS.ALLOCATED)) {
+			return false;
+		}
+		p.setHub(h);
+		return true;
+	}
+
+	@Override
+	public boolean clear(int row) {
+		Person p = people.get(row);
+		if (!ST.compareAndSet(p, STATUS.ALLOCATED, STATUS.NOT_ALLOCATED)) {
+			return false;
+		}
+		p.setDay(-1);
+		p.setSlot(null);
+		return true;
+	}
+
+	@Override
+	public void schedule(int row, int d, int j) {
+		Person p = people.get(row);
+		p.setDay(d);
+		p.setSlot(j < 0 ? null : SlotTable.label(j));
+	}
+
+	@Override
+	public int getDay(int row) {
+		return people.get(row).getDay();
+	}
+
+	@Override
+	public String getSlot(int row) {
+		return people.get(row).getSlot();
+	}
+
+	@Override
+	public String toString(int row) {
+		return people.get(row).toString();
+	}
+}
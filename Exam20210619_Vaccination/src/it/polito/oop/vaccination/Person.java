@@ -5,9 +5,10 @@ public class Person {
 	String lastName;
 	String ssn;
 	int year;
-	STATUS st  = STATUS.NOT_ALLOCATED;
+	volatile STATUS st  = STATUS.NOT_ALLOCATED;
 	Hub hub;
 	String slot;
+	int day = -1;
 	
 	public enum STATUS {ALLOCATED,NOT_ALLOCATED};
 	
@@ -64,5 +65,11 @@ public class Person {
 	public void setSlot(String slot) {
 		this.slot = slot;
 	}
+	public int getDay() {
+		return day;
+	}
+	public void setDay(int day) {
+		this.day = day;
+	}
 
 }
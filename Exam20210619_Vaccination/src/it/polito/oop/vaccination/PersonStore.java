@@ -0,0 +1,103 @@
+package it.polito.oop.vaccination;
+
+import it.polito.oop.vaccination.Person.STATUS;
+
+/**
+ * Storage of the people registered in the vaccination system.
+ * <p>
+ * People are identified by a row number assigned when they
+ * are added, starting from 0.
+ */
+interface PersonStore {
+
+	/**
+	 * Adds a new person to the store, the SSN is assumed not to be present.
+	 *
+	 * @return the row of the new person
+	 */
+	int add(String firstName, String lastName, String ssn, int year);
+
+	/**
+	 * Number of people in the store.
+	 */
+	int size();
+
+	/**
+	 * Prepares the store to receive the given number of additional people.
+	 */
+	void ensureCapacity(int n);
+
+	String getSsn(int row);
+
+	String getFirstName(int row);
+
+	String getLastName(int row);
+
+	int getYear(int row);
+
+	STATUS getSt(int row);
+
+	Hub getHub(int row);
+
+	/**
+	 * Marks a person as allocated to a hub, unless already allocated.
+	 * The change of status is atomic.
+	 *
+	 * @return {@code true} if the person was not allocated
+	 */
+	boolean allocate(int row, Hub h);
+
+	/**
+	 * Marks a person as not allocated.
+	 *
+	 * @return {@code true} if the person was allocated
+	 */
+	boolean clear(int row);
+
+	/**
+	 * Records the day and the time slot assigned to an allocated person,
+	 * they are reset by {@link #clear}.
+	 *
+	 * @param d day of the week
+	 * @param j slot of the day (see {@link SlotTable}), -1 if none was available
+	 */
+	void schedule(int row, int d, int j);
+
+	/**
+	 * Day assigned to a person, -1 if none.
+	 */
+	int getDay(int row);
+
+	/**
+	 * Label of the time slot assigned to a person, {@code null} if none.
+	 */
+	String getSlot(int row);
+
+	/**
+	 * Packed encoding of the first part of a packable SSN, see {@link SsnKey}.
+	 */
+	default long ssnHi(int row) {
+		return SsnKey.hi(getSsn(row));
+	}
+
+	/**
+	 * Packed encoding of the second part of a packable SSN, see {@link SsnKey}.
+	 */
+	default long ssnLo(int row) {
+		return SsnKey.lo(getSsn(row));
+	}
+
+	/**
+	 * Compares the SSN of two people, as {@link String#compareTo}.
+	 */
+	default int compareSsn(int a, int b) {
+		return getSsn(a).compareTo(getSsn(b));
+	}
+
+	/**
+	 * Information about a person formatted as ssn, last name, and first name.
+	 */
+	default String toString(int row) {
+		return getSsn(row) + "," + getLastName(row) + "," + getFirstName(row);
+	}
+}
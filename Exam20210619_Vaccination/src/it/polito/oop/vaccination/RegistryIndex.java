@@ -0,0 +1,41 @@
+package it.polito.oop.vaccination;
+
+/**
+ * Index of the people in a {@link PersonStore} by SSN.
+ */
+interface RegistryIndex {
+
+	/**
+	 * Retrieves the row of the person with the given SSN.
+	 *
+	 * @return the row or -1 if the SSN is not present
+	 */
+	int get(String ssn);
+
+	/**
+	 * Adds the row of a person unless the SSN is already present.
+	 * The row may be added to the store afterwards, only if the
+	 * SSN was not present.
+	 *
+	 * @return -1 if the row has been added, otherwise the row
+	 *         of the person already present with the same SSN
+	 */
+	int putIfAbsent(String ssn, int row);
+
+	/**
+	 * Number of people in the index.
+	 */
+	int size();
+
+	/**
+	 * Prepares the index to receive the given number of additional people.
+	 */
+	default void ensureCapacity(int n) {
+	}
+
+	/**
+	 * Retrieves the rows of all the people sorted by SSN.
+	 * The array must not be modified.
+	 */
+	int[] ordered();
+}
@@ -0,0 +1,55 @@
+package it.polito.oop.vaccination;
+
+/**
+ * Sorting of arrays of rows by the SSN of the people in a {@link PersonStore}.
+ */
+final class RowSort {
+
+	private RowSort() {
+	}
+
+	/**
+	 * Sorts a range of rows by SSN (stable merge sort, linear on sorted ranges).
+	 */
+	static void sort(PersonStore store, int[] rows, int from, int to) {
+		if (to - from > 1) {
+			mergeSort(store, rows, from, to, new int[to - from]);
+		}
+	}
+
+	private static void mergeSort(PersonStore store, int[] rows, int from, int to, int[] tmp) {
+		if (to - from <= 8) {
+			for (int i = from + 1; i < to; i++) {
+				int r = rows[i];
+				int j = i;
+				for (; j > from && store.compareSsn(rows[j - 1], r) > 0; j--) {
+					rows[j] = rows[j - 1];
+				}
+				rows[j] = r;
+			}
+			return;
+		}
+		int mid = (from + to) >>> 1;
+		mergeSort(store, rows, from, mid, tmp);
+		mergeSort(store, rows, mid, to, tmp);
+		merge(store, rows, from, mid, to, tmp);
+	}
+
+	/**
+	 * Merges the sorted ranges {@code [from,mid)} and {@code [mid,to)}.
+	 *
+	 * @param tmp a buffer of at least {@code mid-from} elements
+	 */
+	static void merge(PersonStore store, int[] rows, int from, int mid, int to, int[] tmp) {
+		if (from == mid || mid == to || store.compareSsn(rows[mid - 1], rows[mid]) <= 0) {
+			return;
+		}
+		int n = mid - from;
+		System.arraycopy(rows, from, tmp, 0, n);
+		int i = 0, j = mid, k = from;
+		while (i < n && j < to) {
+			rows[k++] = store.compareSsn(rows[j], tmp[i]) < 0 ? rows[j++] : tmp[i++];
+		}
+		System.arraycopy(tmp, i, rows, k, n - i);
+	}
+}
@@ -0,0 +1,590 @@
+package it.polito.oop.vaccination;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.function.ToIntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Vaccination system partitioned into independent {@link Vaccines} shards,
+ * for instance one for each region.
+ * <p>
+ * Each person belongs to the shard chosen by a partitioning function of
+ * the SSN (by default its hash), each hub to the shard it is defined in;
+ * the people of a shard are allocated only to the hubs of the same shard.
+ * Shards do not share any state, so loads and allocations proceed on all
+ * the shards in parallel, and the statistics are aggregated from those
+ * of the shards.
+ * <p>
+ * Age intervals and working hours are the same for all the shards.
+ */
+public class ShardedVaccines {
+
+	/** people added to a shard at once by {@link #loadPeople} */
+	private static final int LOAD_BATCH = 4096;
+
+	private final Vaccines[] shards;
+	private final ToIntFunction<String> partition;
+	/** shard of each hub, in order of definition */
+	private final Map<String, Integer> hubs = new LinkedHashMap<>();
+	/** guards the table of the hubs */
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private volatile BiConsumer<Integer, String> lst;
+
+	/**
+	 * Creates a system partitioning people by the hash of their SSN.
+	 *
+	 * @param shards number of shards
+	 */
+	public ShardedVaccines(int shards) {
+		this(shards, String::hashCode);
+	}
+
+	/**
+	 * Creates a system partitioning people with the given function, e.g.
+	 * mapping the SSN to the region of birth.
+	 * The result of the function is reduced modulo the number of shards.
+	 *
+	 * @param shards number of shards
+	 * @param partition function giving the shard of an SSN
+	 */
+	public ShardedVaccines(int shards, ToIntFunction<String> partition) {
+		if (shards <= 0) {
+			throw new IllegalArgumentException("shards must be positive");
+		}
+		this.shards = new Vaccines[shards];
+		for (int k = 0; k < shards; k++) {
+			this.shards[k] = new Vaccines();
+		}
+		this.partition = partition;
+	}
+
+	/**
+	 * Number of shards.
+	 */
+	public int getShards() {
+		return shards.length;
+	}
+
+	/**
+	 * Shard a person belongs to.
+	 *
+	 * @param ssn "codice fiscale" of the person
+	 * @return the shard index
+	 */
+	public int shardOf(String ssn) {
+		return Math.floorMod(partition.applyAsInt(ssn), shards.length);
+	}
+
+	/**
+	 * Retrieves a shard, e.g. to access the features not aggregated by this class.
+	 *
+	 * @param k shard index
+	 * @return the shard
+	 */
+	public Vaccines getShard(int k) {
+		return shards[k];
+	}
+
+	/**
+	 * Adds a person to their shard, see {@link Vaccines#addPerson}.
+	 *
+	 * @return {@code false} if ssn is duplicate
+	 */
+	public boolean addPerson(String firstName, String lastName, String ssn, int year) {
+		return shards[shardOf(ssn)].addPerson(firstName, lastName, ssn, year);
+	}
+
+	/**
+	 * Loads people from a CSV content, as {@link Vaccines#loadPeople(Reader)}:
+	 * the lines are split among the shards in batches, each added to its
+	 * shard in parallel while the following lines are read. At most two
+	 * batches for each shard are in memory at any time.
+	 * <p>
+	 * Invalid and duplicate lines are skipped and reported to the load
+	 * listener of this system (see {@link #setLoadListener}), from the
+	 * calling thread: duplicates are reported once their batch has been
+	 * added, so lines are not reported in order.
+	 * <p>
+	 * As in {@link Vaccines#loadPeople(Reader)}, the load stops at the first
+	 * empty line, so empty content adds nothing, and a year that is not a
+	 * number fails the load, unless the SSN is already present.
+	 *
+	 * @param people {@code Reader} for the CSV content
+	 * @return number of correctly added people
+	 * @throws IOException in case of IO error
+	 * @throws VaccineException in case of error in the header
+	 * @throws NumberFormatException if the year of a new person is not a number
+	 */
+	public long loadPeople(Reader people) throws IOException, VaccineException {
+		BiConsumer<Integer, String> lst = this.lst;
+		LoadBatch[] filling = new LoadBatch[shards.length];
+		LoadBatch[] adding = new LoadBatch[shards.length];
+		long count = 0;
+		try (BufferedReader in = new BufferedReader(people)) {
+			String[] data = new String[4];
+			String line = in.readLine();
+			if (line == null || line.isEmpty()) {
+				return 0;
+			}
+			if (Vaccines.splitFields(line, data) != 4 || !data[0].equals("SSN")
+					|| !data[1].equals("LAST") || !data[2].equals("FIRST") || !data[3].equals("YEAR")) {
+				if (lst != null) {
+					lst.accept(1, line);
+				}
+				throw new VaccineException();
+			}
+			int lineNo = 1;
+			while ((line = in.readLine()) != null && !line.isEmpty()) {
+				lineNo++;
+				if (Vaccines.splitFields(line, data) != 4 || data[0].isEmpty() || data[1].isEmpty()
+						|| data[2].isEmpty() || data[3].isEmpty()) {
+					if (lst != null) {
+						lst.accept(lineNo, line);
+					}
+					continue;
+				}
+				int k = shardOf(data[0]);
+				if (!isYear(data[3])) {
+					// the lines before are added to the shard, to tell a duplicate
+					count += flush(k, filling, adding, lst);
+					if (!shards[k].hasPerson(data[0])) {
+						// all the lines before are added, as the sequential load does
+						for (int s = 0; s < shards.length; s++) {
+							flush(s, filling, adding, lst);
+						}
+						throw new NumberFormatException("For input string: \"" + data[3] + "\"");
+					}
+					if (lst != null) {
+						lst.accept(lineNo, line);
+					}
+					continue;
+				}
+				if (filling[k] == null) {
+					filling[k] = new LoadBatch();
+				}
+				if (filling[k].add(data, lineNo, line)) {
+					// the batch being added is waited for, then filled again
+					count += finish(adding[k], lst);
+					LoadBatch full = filling[k];
+					filling[k] = adding[k];
+					adding[k] = full.start(shards[k]);
+				}
+			}
+			for (int k = 0; k < shards.length; k++) {
+				if (filling[k] != null && filling[k].size > 0) {
+					count += finish(adding[k], lst);
+					adding[k] = filling[k].start(shards[k]);
+				}
+			}
+			for (int k = 0; k < shards.length; k++) {
+				LoadBatch b = adding[k];
+				adding[k] = null;
+				count += finish(b, lst);
+			}
+			return count;
+		} finally {
+			// no batch is left running when the load fails
+			for (LoadBatch b : adding) {
+				if (b != null && b.added != null) {
+					b.added.handle((r, e) -> null).join();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds all the lines read for a shard, waiting for its batches.
+	 *
+	 * @return the number of people added
+	 */
+	private int flush(int k, LoadBatch[] filling, LoadBatch[] adding, BiConsumer<Integer, String> lst) {
+		int n = finish(adding[k], lst);
+		if (filling[k] != null && filling[k].size > 0) {
+			LoadBatch b = filling[k];
+			filling[k] = adding[k];
+			adding[k] = b.start(shards[k]);
+			n += finish(adding[k], lst);
+		}
+		return n;
+	}
+
+	/**
+	 * Waits for a batch to be added to its shard, reporting its duplicates.
+	 *
+	 * @return the number of people added
+	 */
+	private static int finish(LoadBatch b, BiConsumer<Integer, String> lst) {
+		if (b == null || b.added == null) {
+			return 0;
+		}
+		BitSet rejected;
+		try {
+			rejected = b.added.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+		if (lst != null) {
+			for (int i = rejected.nextSetBit(0); i >= 0; i = rejected.nextSetBit(i + 1)) {
+				lst.accept(b.lineNo[i], b.lines[i]);
+			}
+		}
+		int n = b.size - rejected.cardinality();
+		b.size = 0;
+		b.added = null;
+		return n;
+	}
+
+	/**
+	 * Lines of a shard read from a CSV content, added to the shard at once.
+	 */
+	private static class LoadBatch {
+		final String[] first = new String[LOAD_BATCH];
+		final String[] last = new String[LOAD_BATCH];
+		final String[] ssn = new String[LOAD_BATCH];
+		final int[] year = new int[LOAD_BATCH];
+		final int[] lineNo = new int[LOAD_BATCH];
+		final String[] lines = new String[LOAD_BATCH];
+		int size;
+		CompletableFuture<BitSet> added;
+
+		/**
+		 * Adds the fields of a line.
+		 *
+		 * @return {@code true} if the batch is full
+		 */
+		boolean add(String[] data, int no, String line) {
+			ssn[size] = data[0];
+			last[size] = data[1];
+			first[size] = data[2];
+			year[size] = Integer.parseInt(data[3]);
+			lineNo[size] = no;
+			lines[size] = line;
+			return ++size == LOAD_BATCH;
+		}
+
+		/**
+		 * Starts adding the batch to a shard.
+		 */
+		LoadBatch start(Vaccines v) {
+			int n = size;
+			added = CompletableFuture.supplyAsync(() -> {
+				try {
+					return n == LOAD_BATCH ? v.addPeople(first, last, ssn, year)
+							: v.addPeople(Arrays.copyOf(first, n), Arrays.copyOf(last, n),
+									Arrays.copyOf(ssn, n), Arrays.copyOf(year, n));
+				} catch (VaccineException e) {
+					// the arrays have the same length
+					throw new IllegalStateException(e);
+				}
+			});
+			return this;
+		}
+	}
+
+	/**
+	 * Defines a listener for {@link #loadPeople}, as {@link Vaccines#setLoadListener}.
+	 * The listeners of the shards are not notified.
+	 *
+	 * @param lst the listener for load errors
+	 */
+	public void setLoadListener(BiConsumer<Integer, String> lst) {
+		this.lst = lst;
+	}
+
+	private static boolean isYear(String s) {
+		try {
+			Integer.parseInt(s);
+			return true;
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Number of people in all the shards.
+	 */
+	public int countPeople() {
+		int n = 0;
+		for (Vaccines v : shards) {
+			n += v.countPeople();
+		}
+		return n;
+	}
+
+	/**
+	 * Retrieves a person, see {@link Vaccines#getPerson}.
+	 */
+	public String getPerson(String ssn) {
+		return shards[shardOf(ssn)].getPerson(ssn);
+	}
+
+	/**
+	 * Retrieves the age of a person, see {@link Vaccines#getAge}.
+	 */
+	public int getAge(String ssn) {
+		return shards[shardOf(ssn)].getAge(ssn);
+	}
+
+	/**
+	 * Defines the age intervals of all the shards, see {@link Vaccines#setAgeIntervals}.
+	 */
+	public void setAgeIntervals(int... breaks) {
+		for (Vaccines v : shards) {
+			v.setAgeIntervals(breaks);
+		}
+	}
+
+	/**
+	 * Labels of the age intervals, see {@link Vaccines#getAgeIntervals}.
+	 */
+	public Collection<String> getAgeIntervals() {
+		return shards[0].getAgeIntervals();
+	}
+
+	/**
+	 * Defines a hub in the next shard, in round robin order.
+	 *
+	 * @param name name of the hub
+	 * @throws VaccineException in case of duplicate name
+	 */
+	public void defineHub(String name) throws VaccineException {
+		lock.writeLock().lock();
+		try {
+			defineHub(name, hubs.size() % shards.length);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Defines a hub in a given shard.
+	 *
+	 * @param name name of the hub, unique among all the shards
+	 * @param shard shard index
+	 * @throws VaccineException in case of duplicate name or invalid shard
+	 */
+	public void defineHub(String name, int shard) throws VaccineException {
+		lock.writeLock().lock();
+		try {
+			if (hubs.containsKey(name) || shard < 0 || shard >= shards.length) {
+				throw new VaccineException();
+			}
+			shards[shard].defineHub(name);
+			hubs.put(name, shard);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Names of the hubs of all the shards, in order of definition.
+	 */
+	public Collection<String> getHubs() {
+		lock.readLock().lock();
+		try {
+			return Collections.unmodifiableList(new ArrayList<>(hubs.keySet()));
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Defines the staffing of a hub, see {@link Vaccines#setStaff}.
+	 *
+	 * @throws VaccineException in case of undefined hub or invalid staffing
+	 */
+	public void setStaff(String name, int countDoctors, int countNurse, int o) throws VaccineException {
+		shard(name).setStaff(name, countDoctors, countNurse, o);
+	}
+
+	/**
+	 * Defines the working hours of all the shards, see {@link Vaccines#setHours}.
+	 *
+	 * @throws VaccineException if the hours are invalid
+	 */
+	public void setHours(int... hours) throws VaccineException {
+		for (Vaccines v : shards) {
+			v.setHours(hours);
+		}
+	}
+
+	/**
+	 * Available places for each hub and day of the week, see {@link Vaccines#getAvailable}.
+	 *
+	 * @return the map from hub names, in order of definition, to the places for the 7 days
+	 */
+	public Map<String, List<Integer>> getAvailable() {
+		List<Map<String, List<Integer>>> available = IntStream.range(0, shards.length).parallel()
+				.mapToObj(k -> shards[k].getAvailable())
+				.collect(Collectors.toList());
+		Map<String, List<Integer>> res = new LinkedHashMap<>();
+		lock.readLock().lock();
+		try {
+			for (Map.Entry<String, Integer> e : hubs.entrySet()) {
+				res.put(e.getKey(), available.get(e.getValue()).get(e.getKey()));
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		return res;
+	}
+
+	/**
+	 * Allocates a hub on a given day, see {@link Vaccines#allocate}.
+	 *
+	 * @throws VaccineException in case of undefined hub
+	 */
+	public List<String> allocate(String hubName, int d) throws VaccineException {
+		return shard(hubName).allocate(hubName, d);
+	}
+
+	/**
+	 * Allocates all the hubs on a given day, the shards in parallel and
+	 * the hubs of each shard in order of definition.
+	 *
+	 * @param d day of week index (0 = Monday)
+	 * @return the map from hub names to the SSNs allocated
+	 */
+	public Map<String, List<String>> allocate(int d) {
+		List<Map<String, List<String>>> days = IntStream.range(0, shards.length).parallel()
+				.mapToObj(k -> {
+					Map<String, List<String>> m = new LinkedHashMap<>();
+					for (String h : shards[k].getHubs()) {
+						m.put(h, shards[k].allocate(h, d));
+					}
+					return m;
+				})
+				.collect(Collectors.toList());
+		return merge(days);
+	}
+
+	/**
+	 * Allocates the week on all the shards in parallel, see {@link Vaccines#weekAllocate}.
+	 *
+	 * @return the list of daily allocations, with the hubs in order of definition
+	 */
+	public List<Map<String, List<String>>> weekAllocate() {
+		List<List<Map<String, List<String>>>> weeks = IntStream.range(0, shards.length).parallel()
+				.mapToObj(k -> shards[k].weekAllocate())
+				.collect(Collectors.toList());
+		List<Map<String, List<String>>> res = new ArrayList<>(7);
+		for (int d = 0; d < 7; d++) {
+			List<Map<String, List<String>>> day = new ArrayList<>(shards.length);
+			for (List<Map<String, List<String>>> w : weeks) {
+				day.add(w.get(d));
+			}
+			res.add(merge(day));
+		}
+		return res;
+	}
+
+	/**
+	 * Clears the allocation of all the shards, see {@link Vaccines#clearAllocation}.
+	 */
+	public void clearAllocation() {
+		IntStream.range(0, shards.length).parallel().forEach(k -> shards[k].clearAllocation());
+	}
+
+	/**
+	 * Allocation statistics of all the shards together, see {@link Vaccines#getAllocationStats}.
+	 */
+	public AllocationStats getAllocationStats() {
+		int people = 0;
+		int allocated = 0;
+		String[] labels = null;
+		int[] count = null;
+		int[] intervalAllocated = null;
+		for (Vaccines v : shards) {
+			AllocationStats s = v.getAllocationStats();
+			if (labels == null) {
+				labels = new String[s.getIntervals()];
+				count = new int[labels.length];
+				intervalAllocated = new int[labels.length];
+				for (int i = 0; i < labels.length; i++) {
+					labels[i] = s.getLabel(i);
+				}
+			}
+			people += s.getPeople();
+			allocated += s.getAllocated();
+			for (int i = 0; i < labels.length; i++) {
+				count[i] += s.getPeople(i);
+				intervalAllocated[i] += s.getAllocated(i);
+			}
+		}
+		return new AllocationStats(people, allocated, labels, count, intervalAllocated);
+	}
+
+	/**
+	 * Proportion of allocated people in all the shards, see {@link Vaccines#propAllocated}.
+	 */
+	public double propAllocated() {
+		return getAllocationStats().propAllocated();
+	}
+
+	/**
+	 * Proportion of allocated people by age interval in all the shards,
+	 * see {@link Vaccines#propAllocatedAge}.
+	 */
+	public Map<String, Double> propAllocatedAge() {
+		return getAllocationStats().propAllocatedAge();
+	}
+
+	/**
+	 * Distribution of the allocated people among the age intervals
+	 * in all the shards, see {@link Vaccines#distributionAllocated}.
+	 */
+	public Map<String, Double> distributionAllocated() {
+		return getAllocationStats().distributionAllocated();
+	}
+
+	private Vaccines shard(String hubName) throws VaccineException {
+		lock.readLock().lock();
+		try {
+			Integer k = hubs.get(hubName);
+			if (k == null) {
+				throw new VaccineException();
+			}
+			return shards[k];
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Merges the allocations of the shards, with the hubs in order of definition.
+	 */
+	private Map<String, List<String>> merge(List<Map<String, List<String>>> parts) {
+		Map<String, List<String>> res = new LinkedHashMap<>();
+		lock.readLock().lock();
+		try {
+			for (Map.Entry<String, Integer> e : hubs.entrySet()) {
+				List<String> l = parts.get(e.getValue()).get(e.getKey());
+				if (l != null) {
+					res.put(e.getKey(), l);
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		return res;
+	}
+}
@@ -0,0 +1,80 @@
+package it.polito.oop.vaccination;
+
+/**
+ * Priority queue of the slots of a hub on a day, used to assign
+ * the people allocated to that hub and day to a time slot.
+ * <p>
+ * Each person goes to the least occupied slot, the earliest one among
+ * equally occupied slots, so that the people are spread evenly over the
+ * working hours. Slots that reach their capacity (see {@link SlotTable#capacity})
+ * leave the queue; the queues of a hub are rebuilt when its capacity grows
+ * (see {@link Vaccines#setStaff}) and when its slots are reset.
+ * <p>
+ * The queue is a binary heap of slot indexes ordered by the occupancy
+ * kept in the hub, which is also read without locking by
+ * {@link Vaccines#getSlotOccupancy}.
+ */
+class SlotQueue {
+
+	private final Hub hub;
+	private final SlotTable slots;
+	private final int day;
+	private final int[] heap;
+	private int size;
+
+	SlotQueue(Hub hub, SlotTable slots, int day) {
+		this.hub = hub;
+		this.slots = slots;
+		this.day = day;
+		size = slots.slots(day);
+		heap = new int[size];
+		for (int j = 0; j < size; j++) {
+			heap[j] = j;
+		}
+		for (int k = (size >>> 1) - 1; k >= 0; k--) {
+			siftDown(k);
+		}
+	}
+
+	/**
+	 * Assigns a person to the least occupied slot with places left.
+	 *
+	 * @return the slot of the day or -1 if all the slots are full
+	 */
+	synchronized int next() {
+		int capacity = hub.getCapacity();
+		while (size > 0) {
+			int j = heap[0];
+			if (hub.take(slots.slot(day, j), SlotTable.capacity(j, capacity))) {
+				siftDown(0);
+				return j;
+			}
+			heap[0] = heap[--size];
+			siftDown(0);
+		}
+		return -1;
+	}
+
+	private void siftDown(int k) {
+		int j = heap[k];
+		int half = size >>> 1;
+		while (k < half) {
+			int c = 2 * k + 1;
+			if (c + 1 < size && before(heap[c + 1], heap[c])) {
+				c++;
+			}
+			if (!before(heap[c], j)) {
+				break;
+			}
+			heap[k] = heap[c];
+			k = c;
+		}
+		heap[k] = j;
+	}
+
+	private boolean before(int a, int b) {
+		int oa = hub.occupancy.get(slots.slot(day, a));
+		int ob = hub.occupancy.get(slots.slot(day, b));
+		return oa < ob || oa == ob && a < b;
+	}
+}
@@ -0,0 +1,153 @@
+package it.polito.oop.vaccination;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable table of the time slots of the week, built from the
+ * working hours of each day (see {@link Vaccines#setHours}).
+ * <p>
+ * Slots start at 9:00 and last 15 minutes. The slots of the whole week
+ * are numbered consecutively, day after day, so that per slot counters
+ * can be kept in flat arrays indexed by {@link #slot}.
+ */
+class SlotTable {
+
+	/** slots in an hour */
+	static final int PER_HOUR = 4;
+	/** maximum working hours in a day */
+	static final int MAX_HOURS = 12;
+	/** first slot of the day, in minutes from midnight */
+	static final int START = 9 * 60;
+
+	/** labels of the slots of a day, shared by all the days */
+	private static final String[] LABELS = new String[MAX_HOURS * PER_HOUR];
+	/** start of the slots of a day, in minutes from midnight */
+	private static final int[] MINUTES = new int[MAX_HOURS * PER_HOUR];
+	/** slot of the day of each label */
+	private static final Map<String, Integer> INDEX = new HashMap<>();
+
+	static {
+		for (int j = 0; j < LABELS.length; j++) {
+			MINUTES[j] = START + j * 60 / PER_HOUR;
+			LABELS[j] = String.format("%02d:%02d", MINUTES[j] / 60, MINUTES[j] % 60).intern();
+			INDEX.put(LABELS[j], j);
+		}
+	}
+
+	/** table without working hours */
+	static final SlotTable EMPTY = new SlotTable(new int[7]);
+
+	private final int[] hours;
+	/** number of the first slot of each day, and total slots at the end */
+	private final int[] first = new int[8];
+	private final List<List<String>> labels;
+
+	/**
+	 * Builds the table for the given working hours.
+	 *
+	 * @param hours working hours for the 7 days, at most {@link #MAX_HOURS}
+	 */
+	SlotTable(int[] hours) {
+		this.hours = Arrays.copyOf(hours, 7);
+		List<List<String>> l = new ArrayList<>(7);
+		for (int d = 0; d < 7; d++) {
+			int n = slots(d);
+			first[d + 1] = first[d] + n;
+			l.add(Collections.unmodifiableList(Arrays.asList(Arrays.copyOf(LABELS, n))));
+		}
+		labels = Collections.unmodifiableList(l);
+	}
+
+	/**
+	 * Working hours of a day.
+	 */
+	int hours(int d) {
+		return hours[d];
+	}
+
+	/**
+	 * Number of slots of a day.
+	 */
+	int slots(int d) {
+		return Math.max(0, hours[d]) * PER_HOUR;
+	}
+
+	/**
+	 * Number of slots of the week.
+	 */
+	int total() {
+		return first[7];
+	}
+
+	/**
+	 * Number in the week of a slot of a day.
+	 *
+	 * @param d day of the week
+	 * @param j slot of the day
+	 */
+	int slot(int d, int j) {
+		return first[d] + j;
+	}
+
+	/**
+	 * Label of a slot of a day, as {@code "09:15"}.
+	 */
+	static String label(int j) {
+		return LABELS[j];
+	}
+
+	/**
+	 * Start of a slot of a day, in minutes from midnight.
+	 */
+	static int minute(int j) {
+		return MINUTES[j];
+	}
+
+	/**
+	 * Slot of the day with the given label, whatever the working hours.
+	 *
+	 * @param label slot label, as {@code "09:15"}, or {@code null}
+	 * @return the slot or -1 if no slot has that label
+	 */
+	static int index(String label) {
+		Integer j = label == null ? null : INDEX.get(label);
+		return j == null ? -1 : j;
+	}
+
+	/**
+	 * Finds the slot of a day with the given label.
+	 *
+	 * @param d day of the week
+	 * @param label slot label, as {@code "09:15"}
+	 * @return the slot of the day or -1 if the day has no such slot
+	 */
+	int indexOf(int d, String label) {
+		Integer j = INDEX.get(label);
+		return j == null || j >= slots(d) ? -1 : j;
+	}
+
+	/**
+	 * Capacity of a slot of a day, given the hourly capacity of the hub.
+	 * The hourly capacity is split evenly among the slots of the hour,
+	 * with the remainder going to the first ones.
+	 *
+	 * @param j slot of the day
+	 * @param hourly hourly capacity
+	 * @return the number of people that fit in the slot
+	 */
+	static int capacity(int j, int hourly) {
+		return hourly / PER_HOUR + (j % PER_HOUR < hourly % PER_HOUR ? 1 : 0);
+	}
+
+	/**
+	 * Labels of the slots for all the days of the week, as unmodifiable lists.
+	 */
+	List<List<String>> labels() {
+		return labels;
+	}
+}
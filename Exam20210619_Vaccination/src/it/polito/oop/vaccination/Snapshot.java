@@ -0,0 +1,291 @@
+package it.polito.oop.vaccination;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import it.polito.oop.vaccination.Person.STATUS;
+
+/**
+ * Binary snapshot of the state of a {@link Vaccines} system.
+ * <p>
+ * The file starts with a header made of a magic number, the format
+ * version, the length of the content and its CRC32 checksum, followed
+ * by the content: age interval breaks, working hours, hubs with their
+ * staffing and places taken on each day, and people with their allocation
+ * (hub, day and time slot, or -1 for the hub if not allocated).
+ * All values are big endian, strings are stored as their UTF-8 length
+ * followed by the bytes.
+ * <p>
+ * Snapshots are written through a buffer and read back by mapping the
+ * file in memory, a window at a time.
+ */
+class Snapshot {
+
+	static final int MAGIC = 0x56414353; // "VACS"
+	static final int VERSION = 1;
+	static final int HEADER = 4 + 4 + 8 + 8;
+
+	private static final int BUFFER = 1 << 16;
+	private static final int WINDOW = 1 << 28;
+
+	private Snapshot() {
+	}
+
+	/**
+	 * Writes the state of the system.
+	 * The caller must prevent concurrent changes.
+	 *
+	 * @param v the system
+	 * @param ch channel of an empty file
+	 * @throws IOException in case of IO error
+	 */
+	static void write(Vaccines v, FileChannel ch) throws IOException {
+		Writer w = new Writer(ch);
+		w.buf.position(HEADER);
+		w.start = HEADER;
+
+		w.putInt(v.intervals.length);
+		for (int b : v.intervals) {
+			w.putInt(b);
+		}
+		for (int d = 0; d < 7; d++) {
+			w.putInt(v.slots.hours(d));
+		}
+		w.putInt(v.hubList.size());
+		for (Hub h : v.hubList) {
+			w.putString(h.getName());
+			w.putInt(h.getDoc());
+			w.putInt(h.getNurse());
+			w.putInt(h.getOther());
+			for (int d = 0; d < 7; d++) {
+				w.putInt(h.taken.get(d));
+			}
+		}
+		PersonStore store = v.store;
+		w.putInt(store.size());
+		for (int row = 0; row < store.size(); row++) {
+			w.putString(store.getSsn(row));
+			w.putString(store.getLastName(row));
+			w.putString(store.getFirstName(row));
+			w.putInt(store.getYear(row));
+			if (store.getSt(row) == STATUS.ALLOCATED) {
+				String slot = store.getSlot(row);
+				w.putInt(store.getHub(row).id);
+				w.putInt(store.getDay(row));
+				w.putInt(slot == null ? -1 : v.slots.indexOf(store.getDay(row), slot));
+			} else {
+				w.putInt(-1);
+			}
+		}
+		w.flush();
+
+		ByteBuffer header = ByteBuffer.allocate(HEADER);
+		header.putInt(MAGIC).putInt(VERSION).putLong(w.length).putLong(w.crc.getValue());
+		header.flip();
+		ch.write(header, 0);
+		ch.force(true);
+	}
+
+	/**
+	 * Reads a snapshot into an empty system.
+	 * The caller must prevent concurrent access, and empty the system
+	 * again if the snapshot turns out not to be valid.
+	 *
+	 * @param v the system
+	 * @param ch channel of the snapshot file
+	 * @throws IOException in case of IO error
+	 * @throws VaccineException if the file is not a valid snapshot
+	 */
+	static void read(Vaccines v, FileChannel ch) throws IOException, VaccineException {
+		Reader r = new Reader(ch);
+		if (r.size < HEADER) {
+			throw new VaccineException();
+		}
+		r.need(HEADER);
+		if (r.buf.getInt() != MAGIC || r.buf.getInt() != VERSION) {
+			throw new VaccineException();
+		}
+		long length = r.buf.getLong();
+		long crc = r.buf.getLong();
+		if (length != r.size - HEADER || crc != checksum(ch, HEADER, length)) {
+			throw new VaccineException();
+		}
+
+		int n = r.getInt();
+		if (n < 0) {
+			throw new VaccineException();
+		}
+		int[] breaks = new int[n];
+		for (int i = 0; i < n; i++) {
+			breaks[i] = r.getInt();
+		}
+		Arrays.sort(breaks);
+		v.intervals = breaks;
+		int[] hours = new int[7];
+		for (int d = 0; d < 7; d++) {
+			hours[d] = r.getInt();
+			if (hours[d] < 0 || hours[d] > SlotTable.MAX_HOURS) {
+				throw new VaccineException();
+			}
+		}
+		v.slots = new SlotTable(hours);
+		n = r.getInt();
+		for (int i = 0; i < n; i++) {
+			Hub h = new Hub(r.getString());
+			h.id = v.hubList.size();
+			h.setStaff(r.getInt(), r.getInt(), r.getInt());
+			for (int d = 0; d < 7; d++) {
+				h.taken.set(d, r.getInt());
+			}
+			h.resetSlots(v.slots);
+			v.hubs.put(h.getName(), h);
+			v.hubList.add(h);
+		}
+		PersonStore store = v.store;
+		n = r.getInt();
+		for (int i = 0; i < n; i++) {
+			String ssn = r.getString();
+			String last = r.getString();
+			String first = r.getString();
+			int row = store.add(first, last, ssn, r.getInt());
+			if (v.people.putIfAbsent(ssn, row) >= 0) {
+				throw new VaccineException();
+			}
+			int hub = r.getInt();
+			if (hub >= 0) {
+				if (hub >= v.hubList.size()) {
+					throw new VaccineException();
+				}
+				Hub h = v.hubList.get(hub);
+				int d = r.getInt();
+				int j = r.getInt();
+				if (d < -1 || d >= 7 || d >= 0 && (j < -1 || j >= v.slots.slots(d))) {
+					throw new VaccineException();
+				}
+				store.allocate(row, h);
+				if (d >= 0) {
+					store.schedule(row, d, j);
+					if (j >= 0) {
+						h.occupancy.incrementAndGet(v.slots.slot(d, j));
+					}
+				}
+			}
+		}
+		for (Hub h : v.hubList) {
+			h.resetQueues(v.slots);
+		}
+		v.index = new AgeIndex(v.intervals, store, v.journal);
+		v.metrics.intervals(v.index.size());
+	}
+
+	private static long checksum(FileChannel ch, long from, long length) throws IOException {
+		CRC32 crc = new CRC32();
+		for (long pos = from; pos < from + length; pos += WINDOW) {
+			crc.update(ch.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(WINDOW, from + length - pos)));
+		}
+		return crc.getValue();
+	}
+
+	/**
+	 * Buffered writer that keeps the checksum of the content.
+	 */
+	private static class Writer {
+		final FileChannel ch;
+		final ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER);
+		final CRC32 crc = new CRC32();
+		/** start of the content in the buffer */
+		int start;
+		long length;
+
+		Writer(FileChannel ch) {
+			this.ch = ch;
+		}
+
+		void putInt(int i) throws IOException {
+			need(4);
+			buf.putInt(i);
+		}
+
+		void putString(String s) throws IOException {
+			byte[] b = s.getBytes(StandardCharsets.UTF_8);
+			putInt(b.length);
+			for (int off = 0; off < b.length; ) {
+				need(1);
+				int n = Math.min(buf.remaining(), b.length - off);
+				buf.put(b, off, n);
+				off += n;
+			}
+		}
+
+		private void need(int n) throws IOException {
+			if (buf.remaining() < n) {
+				flush();
+			}
+		}
+
+		void flush() throws IOException {
+			buf.flip();
+			ByteBuffer content = buf.duplicate();
+			content.position(start);
+			length += content.remaining();
+			crc.update(content);
+			while (buf.hasRemaining()) {
+				ch.write(buf);
+			}
+			buf.clear();
+			start = 0;
+		}
+	}
+
+	/**
+	 * Reader that maps the file a window at a time.
+	 */
+	private static class Reader {
+		final FileChannel ch;
+		final long size;
+		MappedByteBuffer buf;
+		/** position in the file of the window */
+		long base;
+		byte[] scratch = new byte[256];
+
+		Reader(FileChannel ch) throws IOException {
+			this.ch = ch;
+			this.size = ch.size();
+			this.buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(WINDOW, size));
+		}
+
+		int getInt() throws IOException, VaccineException {
+			need(4);
+			return buf.getInt();
+		}
+
+		String getString() throws IOException, VaccineException {
+			int n = getInt();
+			if (n < 0) {
+				throw new VaccineException();
+			}
+			need(n);
+			if (scratch.length < n) {
+				scratch = new byte[Math.max(n, scratch.length * 2)];
+			}
+			buf.get(scratch, 0, n);
+			return new String(scratch, 0, n, StandardCharsets.UTF_8);
+		}
+
+		void need(int n) throws IOException, VaccineException {
+			if (buf.remaining() < n) {
+				long pos = base + buf.position();
+				if (size - pos < n) {
+					throw new VaccineException();
+				}
+				base = pos;
+				buf = ch.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(WINDOW, size - pos));
+			}
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package it.polito.oop.vaccination;
+
+/**
+ * Packed encoding of SSNs (italian "codice fiscale") in two {@code long}s.
+ * <p>
+ * Each character of an alphanumeric SSN up to {@value #MAX_LENGTH}
+ * characters long takes 6 bits, ten characters per {@code long}:
+ * character codes follow the ASCII order and 0 pads shorter SSNs,
+ * so comparing the packed values gives the same order as
+ * {@link String#compareTo}.
+ */
+final class SsnKey {
+
+	static final int MAX_LENGTH = 20;
+	private static final int CHARS = 10;
+
+	private SsnKey() {
+	}
+
+	private static int code(char c) {
+		if (c >= '0' && c <= '9') {
+			return c - '0' + 1;
+		}
+		if (c >= 'A' && c <= 'Z') {
+			return c - 'A' + 11;
+		}
+		if (c >= 'a' && c <= 'z') {
+			return c - 'a' + 37;
+		}
+		return -1;
+	}
+
+	private static char letter(int code) {
+		if (code <= 10) {
+			return (char) ('0' + code - 1);
+		}
+		if (code <= 36) {
+			return (char) ('A' + code - 11);
+		}
+		return (char) ('a' + code - 37);
+	}
+
+	/**
+	 * Checks whether an SSN can be packed.
+	 */
+	static boolean packable(String ssn) {
+		if (ssn.length() > MAX_LENGTH) {
+			return false;
+		}
+		for (int i = 0; i < ssn.length(); i++) {
+			if (code(ssn.charAt(i)) < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Packs the first ten characters of a packable SSN.
+	 */
+	static long hi(String ssn) {
+		return pack(ssn, 0);
+	}
+
+	/**
+	 * Packs the characters after the first ten of a packable SSN.
+	 */
+	static long lo(String ssn) {
+		return pack(ssn, CHARS);
+	}
+
+	private static long pack(String ssn, int from) {
+		long k = 0;
+		for (int i = from; i < from + CHARS; i++) {
+			k = k << 6 | (i < ssn.length() ? code(ssn.charAt(i)) : 0);
+		}
+		return k;
+	}
+
+	/**
+	 * Rebuilds an SSN from its packed encoding.
+	 */
+	static String unpack(long hi, long lo) {
+		char[] chars = new char[MAX_LENGTH];
+		int n = 0;
+		for (long k : new long[] { hi, lo }) {
+			for (int shift = 6 * (CHARS - 1); shift >= 0; shift -= 6) {
+				int c = (int) (k >>> shift) & 0x3f;
+				if (c == 0) {
+					return new String(chars, 0, n);
+				}
+				chars[n++] = letter(c);
+			}
+		}
+		return new String(chars, 0, n);
+	}
+
+	/**
+	 * Hash code of a packed SSN, spread over all the bits.
+	 */
+	static int hash(long hi, long lo) {
+		long h = (hi * 0x9E3779B97F4A7C15L ^ lo) * 0xC2B2AE3D27D4EB4FL;
+		return (int) (h ^ h >>> 32);
+	}
+}
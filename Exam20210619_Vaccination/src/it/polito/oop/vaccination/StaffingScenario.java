@@ -0,0 +1,49 @@
+package it.polito.oop.vaccination;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Changes of the staffing of some hubs, to be evaluated by {@link Vaccines#simulate}
+ * without changing the hubs.
+ */
+public class StaffingScenario {
+
+	private final Map<String, int[]> deltas = new LinkedHashMap<>();
+
+	/**
+	 * Adds personnel to a hub, or removes it with negative numbers.
+	 * Changes to the same hub add up.
+	 *
+	 * @param hubName name of the hub
+	 * @param doctors change of the number of doctors
+	 * @param nurses change of the number of nurses
+	 * @param other change of the number of other personnel
+	 * @return this scenario
+	 */
+	public StaffingScenario addStaff(String hubName, int doctors, int nurses, int other) {
+		int[] d = deltas.computeIfAbsent(hubName, k -> new int[3]);
+		d[0] += doctors;
+		d[1] += nurses;
+		d[2] += other;
+		return this;
+	}
+
+	/**
+	 * Changes of the staffing by hub name, as doctors, nurses and other personnel.
+	 */
+	Map<String, int[]> deltas() {
+		return Collections.unmodifiableMap(deltas);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (Map.Entry<String, int[]> e : deltas.entrySet()) {
+			int[] d = e.getValue();
+			sb.append(e.getKey()).append(": ").append(d[0]).append(',').append(d[1]).append(',').append(d[2]).append(' ');
+		}
+		return sb.toString().trim();
+	}
+}
@@ -0,0 +1,120 @@
+package it.polito.oop.vaccination;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable copy of the state that determines an allocation of the week,
+ * used to evaluate staffing scenarios (see {@link Vaccines#simulate}).
+ * <p>
+ * Scenarios are evaluated by reserving places in the age intervals
+ * as {@link AllocationPlan} does, so neither people nor hubs are
+ * involved and any number of scenarios can be evaluated in parallel.
+ */
+class StaffingSimulation {
+
+	private final int people;
+	private final int allocated;
+	private final String[] labels;
+	private final int[] count;
+	private final int[] intervalAllocated;
+	private final int[] available;
+	private final String[] hubs;
+	/** doctors, nurses and other personnel of each hub */
+	private final int[][] staff;
+	/** places already taken for each hub and day */
+	private final int[][] taken;
+	private final int[] hours = new int[7];
+
+	/**
+	 * Copies the state of the system, the caller must prevent concurrent changes.
+	 */
+	StaffingSimulation(Vaccines v) {
+		AgeIndex index = v.index;
+		int n = index.size();
+		people = v.people.size();
+		allocated = index.allocated();
+		labels = new String[n];
+		count = new int[n];
+		intervalAllocated = new int[n];
+		available = new int[n];
+		for (int i = 0; i < n; i++) {
+			labels[i] = index.label(i);
+			count[i] = index.count(i);
+			intervalAllocated[i] = index.allocated(i);
+			available[i] = index.available(i);
+		}
+		List<Hub> hubList = v.hubList;
+		hubs = new String[hubList.size()];
+		staff = new int[hubs.length][];
+		taken = new int[hubs.length][7];
+		for (int k = 0; k < hubs.length; k++) {
+			Hub h = hubList.get(k);
+			hubs[k] = h.getName();
+			synchronized (h) {
+				staff[k] = new int[] { h.getDoc(), h.getNurse(), h.getOther() };
+			}
+			for (int d = 0; d < 7; d++) {
+				taken[k][d] = h.taken.get(d);
+			}
+		}
+		for (int d = 0; d < 7; d++) {
+			hours[d] = v.slots.hours(d);
+		}
+	}
+
+	/**
+	 * Checks that a scenario refers to existing hubs and leaves
+	 * each of them with some personnel of every kind.
+	 *
+	 * @throws VaccineException if the scenario is not valid
+	 */
+	void check(StaffingScenario s) throws VaccineException {
+		for (Map.Entry<String, int[]> e : s.deltas().entrySet()) {
+			int k = hub(e.getKey());
+			if (k < 0) {
+				throw new VaccineException();
+			}
+			for (int j = 0; j < 3; j++) {
+				if (staff[k][j] + e.getValue()[j] <= 0) {
+					throw new VaccineException();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Computes the allocation statistics that {@link Vaccines#weekAllocate}
+	 * would produce with the staffing of a scenario.
+	 */
+	AllocationStats evaluate(StaffingScenario s) {
+		int[] capacity = new int[hubs.length];
+		for (int k = 0; k < hubs.length; k++) {
+			int[] d = s.deltas().get(hubs[k]);
+			capacity[k] = d == null ? Hub.capacity(staff[k][0], staff[k][1], staff[k][2])
+					: Hub.capacity(staff[k][0] + d[0], staff[k][1] + d[1], staff[k][2] + d[2]);
+		}
+		AllocationPlan plan = new AllocationPlan(new int[available.length], available);
+		for (int d = 0; d < 7; d++) {
+			for (int k = 0; k < hubs.length; k++) {
+				plan.reserve(capacity[k] * hours[d] - taken[k][d]);
+			}
+		}
+		int[] res = intervalAllocated.clone();
+		int total = allocated;
+		for (int i = 0; i < res.length; i++) {
+			res[i] += plan.next[i];
+			total += plan.next[i];
+		}
+		return new AllocationStats(people, total, labels, count, res);
+	}
+
+	private int hub(String name) {
+		for (int k = 0; k < hubs.length; k++) {
+			if (hubs[k].equals(name)) {
+				return k;
+			}
+		}
+		return -1;
+	}
+}
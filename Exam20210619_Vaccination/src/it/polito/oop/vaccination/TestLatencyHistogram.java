@@ -0,0 +1,102 @@
+package it.polito.oop.vaccination;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public final class TestLatencyHistogram {
+
+    @Test
+    public void testEmpty() {
+    	LatencyHistogram h = new LatencyHistogram();
+    	assertEquals(0, h.count());
+    	assertEquals(0, h.mean(), 0.0);
+    	assertEquals(0, h.max());
+    	assertEquals(0, h.percentile(0));
+    	assertEquals(0, h.percentile(1));
+    }
+
+    @Test
+    public void testSmallValues() {
+    	LatencyHistogram h = new LatencyHistogram();
+    	// values up to 63 have a bucket each
+    	for (int v = 0; v < 64; v++) {
+    		h.record(v);
+    	}
+    	assertEquals(64, h.count());
+    	assertEquals(63, h.max());
+    	assertEquals(31.5, h.mean(), 1e-9);
+    	for (int v = 0; v < 64; v++) {
+    		assertEquals("Percentile of " + v, v, h.percentile((v + 0.5) / 64));
+    	}
+    	assertEquals("The lowest percentile is the first value", 0, h.percentile(0));
+    	h.record(-5);
+    	assertEquals(65, h.count());
+    	assertEquals(63, h.max());
+    	assertEquals("Negative values are recorded as 0", 0, h.percentile(1.5 / 65));
+    	assertEquals(1, h.percentile(2.5 / 65));
+    }
+
+    @Test
+    public void testBucketBounds() {
+    	LatencyHistogram h = new LatencyHistogram();
+    	h.record(64);
+    	assertEquals("Capped at the max", 64, h.percentile(0.5));
+    	h.record(1000);
+    	// 64 and 65 share a bucket
+    	assertEquals(65, h.percentile(0.5));
+    	assertEquals(1000, h.percentile(1));
+
+    	h = new LatencyHistogram();
+    	h.record(Long.MAX_VALUE);
+    	h.record(Long.MAX_VALUE - 1);
+    	assertEquals(Long.MAX_VALUE, h.max());
+    	assertEquals(Long.MAX_VALUE, h.percentile(0.5));
+    	assertEquals(Long.MAX_VALUE, h.percentile(1));
+    }
+
+    @Test
+    public void testRelativeError() {
+    	for (long v = 1; v > 0 && v < Long.MAX_VALUE / 2; v = v * 3 + 1) {
+    		for (long x : new long[] {v, v + 1, 2 * v - 1}) {
+    			LatencyHistogram h = new LatencyHistogram();
+    			h.record(x);
+    			h.record(Long.MAX_VALUE);
+    			long p = h.percentile(0.5);
+    			assertTrue(x + " above its bucket " + p, p >= x);
+    			assertTrue(x + " too far from its bucket " + p, p - x <= x / 32);
+    		}
+    	}
+    }
+
+    @Test
+    public void testConcurrent() throws InterruptedException {
+    	LatencyHistogram h = new LatencyHistogram();
+    	List<Thread> threads = new ArrayList<>();
+    	for (int t = 0; t < 4; t++) {
+    		int k = t;
+    		threads.add(new Thread(() -> {
+    			for (int i = 0; i < 10000; i++) {
+    				h.record(i * 4 + k);
+    			}
+    		}));
+    	}
+    	for (Thread t : threads) {
+    		t.start();
+    	}
+    	for (Thread t : threads) {
+    		t.join();
+    	}
+    	assertEquals(40000, h.count());
+    	assertEquals(39999, h.max());
+    	assertEquals(19999.5, h.mean(), 1e-9);
+    	LatencyHistogram c = h.copy();
+    	h.record(50000);
+    	assertEquals("A copy does not change", 40000, c.count());
+    	assertEquals(39999, c.percentile(1));
+    }
+}
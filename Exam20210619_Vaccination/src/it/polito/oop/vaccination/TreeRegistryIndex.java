@@ -0,0 +1,42 @@
+package it.polito.oop.vaccination;
+
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Registry index that keeps the SSNs in a sorted tree.
+ */
+class TreeRegistryIndex implements RegistryIndex {
+
+	private final SortedMap<String, Integer> rows = new TreeMap<>();
+	private volatile int[] ordered;
+
+	@Override
+	public int get(String ssn) {
+		Integer row = rows.get(ssn);
+		return row == null ? -1 : row;
+	}
+
+	@Override
+	public int putIfAbsent(String ssn, int row) {
+		Integer old = rows.putIfAbsent(ssn, row);
+		if (old != null) {
+			return old;
+		}
+		ordered = null;
+		return -1;
+	}
+
+	@Override
+	public int size() {
+		return rows.size();
+	}
+
+	@Override
+	public int[] ordered() {
+		if (ordered == null) {
+			ordered = rows.values().stream().mapToInt(Integer::intValue).toArray();
+		}
+		return ordered;
+	}
+}
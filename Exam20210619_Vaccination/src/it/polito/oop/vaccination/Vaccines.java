@@ -3,9 +3,27 @@ package it.polito.oop.vaccination;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.time.temporal.TemporalAccessor;
 import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
 
 import it.polito.oop.vaccination.Person.STATUS;
 
@@ -13,12 +31,74 @@ import java.util.*;
 public class Vaccines {
 
     public final static int CURRENT_YEAR = java.time.LocalDate.now().getYear();
+    private final static int LOAD_BUFFER = 1 << 16;
+    private final static long MIN_CHUNK = 1 << 20;
+    private final static long MAX_CHUNK = 1 << 30;
     
-    SortedMap<String,Person> people = new TreeMap<>();
-    List<Integer> intervals = new LinkedList<>();
+    private final boolean compact;
+    private final boolean sortedIndex;
+    RegistryIndex people;
+    /** age interval breaks, sorted */
+    int[] intervals = new int[0];
     Map<String,Hub> hubs = new LinkedHashMap<>();
-	List<Integer> hours = new LinkedList<>();
+	volatile SlotTable slots = SlotTable.EMPTY;
 	BiConsumer<Integer, String> lst;
+	List<Hub> hubList = new ArrayList<>();
+	PersonStore store;
+	AgeIndex index;
+	/** guards the registry of people, hubs and intervals, allocation state is updated atomically */
+	final ReadWriteLock lock = new ReentrantReadWriteLock();
+	/** journal of the allocations, if open */
+	volatile Journal journal;
+	final Metrics metrics = new Metrics();
+	/** feeds receiving the allocations */
+	final List<AllocationFeed> feeds = new CopyOnWriteArrayList<>();
+
+    public Vaccines() {
+    	this(false);
+    }
+
+    /**
+     * Creates a vaccination system, optionally keeping the people
+     * in a compact columnar store with a shared dictionary of names.
+     * The compact store reduces the heap used by large registries,
+     * at the cost of decoding names on access.
+     *
+     * @param compact whether to use the columnar store
+     */
+    public Vaccines(boolean compact) {
+    	this(compact, false);
+    }
+
+    /**
+     * Creates a vaccination system, choosing how people are stored
+     * and indexed by SSN.
+     * <p>
+     * By default SSNs are indexed by a hash table; the sorted index keeps
+     * them in a tree, with logarithmic lookups.
+     *
+     * @param compact whether to use the columnar store
+     * @param sortedIndex whether to index SSNs in a sorted tree
+     */
+    public Vaccines(boolean compact, boolean sortedIndex) {
+    	this.compact = compact;
+    	this.sortedIndex = sortedIndex;
+    	reset();
+    }
+
+    /**
+     * Brings the system back to its initial empty state,
+     * keeping the journal and the feeds.
+     */
+    private void reset() {
+    	intervals = new int[0];
+    	hubs.clear();
+    	hubList.clear();
+    	slots = SlotTable.EMPTY;
+    	store = compact ? new ColumnarPersonStore(hubList) : new ObjectPersonStore();
+    	people = sortedIndex ? new TreeRegistryIndex() : new HashRegistryIndex(store);
+    	index = new AgeIndex(intervals, store, journal);
+    }
 
     // R1
     /**
@@ -33,11 +113,59 @@ public class Vaccines {
      * @return {@code false} if ssn is duplicate,
      */
     public boolean addPerson(String firstName, String lastName, String ssn, int year) {
-    	if(people.containsKey(ssn)) {
+    	lock.writeLock().lock();
+    	try {
+    		return add(firstName,lastName,ssn,year);
+    	} finally {
+    		lock.writeLock().unlock();
+    	}
+    }
+
+    /**
+     * Adds many people to the vaccination system at once.
+     * <p>
+     * The records are given as parallel arrays: the i-th person has
+     * the i-th element of each array. Records with an SSN already
+     * present, or repeated within the same call, are not added.
+     *
+     * @param firstNames first names
+     * @param lastNames last names
+     * @param ssns italian "codice fiscale"
+     * @param years birth years
+     * @return the set of the indexes of the records rejected as duplicates
+     * @throws VaccineException if the arrays have different lengths
+     */
+    public BitSet addPeople(String[] firstNames, String[] lastNames, String[] ssns, int[] years) throws VaccineException {
+    	int n = ssns.length;
+    	if (firstNames.length != n || lastNames.length != n || years.length != n) {
+    		throw new VaccineException();
+    	}
+    	lock.writeLock().lock();
+    	try {
+    		people.ensureCapacity(n);
+    		store.ensureCapacity(n);
+    		BitSet rejected = new BitSet(n);
+    		for (int i=0;i<n;i++) {
+    			if (!add(firstNames[i],lastNames[i],ssns[i],years[i])) {
+    				rejected.set(i);
+    			}
+    		}
+    		return rejected;
+    	} finally {
+    		lock.writeLock().unlock();
+    	}
+    }
+
+    /**
+     * Adds a person unless the SSN is present, with a single lookup:
+     * the row the person would take is reserved in the index first.
+     */
+    private boolean add(String firstName, String lastName, String ssn, int year) {
+    	if (people.putIfAbsent(ssn, store.size()) >= 0) {
     		return false;
     	}
-    	people.put(ssn,new Person(firstName,lastName,ssn,year));
-        return true;
+    	index.add(store.add(firstName,lastName,ssn,year));
+    	return true;
     }
 
     /**
@@ -46,7 +174,12 @@ public class Vaccines {
      * @return person count
      */
     public int countPeople() {
-        return people.size();
+    	lock.readLock().lock();
+    	try {
+    		return people.size();
+    	} finally {
+    		lock.readLock().unlock();
+    	}
     }
 
     /**
@@ -58,7 +191,24 @@ public class Vaccines {
      * @return info about the person
      */
     public String getPerson(String ssn) {
-        return people.get(ssn).toString();
+    	lock.readLock().lock();
+    	try {
+    		return store.toString(people.get(ssn));
+    	} finally {
+    		lock.readLock().unlock();
+    	}
+    }
+
+    /**
+     * Checks whether a person is registered, see {@link ShardedVaccines#loadPeople}.
+     */
+    boolean hasPerson(String ssn) {
+    	lock.readLock().lock();
+    	try {
+    		return people.get(ssn) >= 0;
+    	} finally {
+    		lock.readLock().unlock();
+    	}
     }
 
     /**
@@ -68,8 +218,12 @@ public class Vaccines {
      * @return age of person (in years)
      */
     public int getAge(String ssn) {
-    	Person p = people.get(ssn);
-        return CURRENT_YEAR - p.getYear();
+    	lock.readLock().lock();
+    	try {
+    		return CURRENT_YEAR - store.getYear(people.get(ssn));
+    	} finally {
+    		lock.readLock().unlock();
+    	}
     }
 
     /**
@@ -84,8 +238,16 @@ public class Vaccines {
      * @param breaks the array of breaks
      */
     public void setAgeIntervals(int... breaks) {
-    	for (int i:breaks) {
-    		intervals.add(i);
+    	lock.writeLock().lock();
+    	try {
+    		int[] all = Arrays.copyOf(intervals, intervals.length + breaks.length);
+    		System.arraycopy(breaks, 0, all, intervals.length, breaks.length);
+    		Arrays.sort(all);
+    		intervals = all;
+    		index = new AgeIndex(intervals, store, journal);
+    		metrics.intervals(index.size());
+    	} finally {
+    		lock.writeLock().unlock();
     	}
     }
 
@@ -96,17 +258,18 @@ public class Vaccines {
      * if the upper limit is infinity {@code '+'} is used
      * instead of the number.
      *
+     * The labels are computed once by {@link #setAgeIntervals}
+     * and returned as an unmodifiable list, from the youngest interval.
+     *
      * @return labels of the age intervals
      */
     public Collection<String> getAgeIntervals() {
-    	intervals.sort(Comparator.naturalOrder());
-    	Collection<String> res = new LinkedList<>();
-    	res.add("[0," +intervals.get(0)+")");
-    	for (int i=0;i<intervals.size()-1;i++) {
-    		res.add("["+intervals.get(i)+","+intervals.get(i+1)+")");
+    	lock.readLock().lock();
+    	try {
+    		return index.labels();
+    	} finally {
+    		lock.readLock().unlock();
     	}
-    	res.add("[" +intervals.get(intervals.size()-1)+",+)");
-        return res;
     }
 
     /**
@@ -119,7 +282,55 @@ public class Vaccines {
      * @return collection of SSN of person in the age interval
      */
     public Collection<String> getInInterval(String range) {
-    	Collection<String> res = new LinkedList<>();
+    	lock.readLock().lock();
+    	try {
+    		int[] members = inInterval(range);
+    		Collection<String> res = new ArrayList<>(members.length);
+    		for (int row : members) {
+    			res.add(store.getSsn(row));
+    		}
+    		return res;
+    	} finally {
+    		lock.readLock().unlock();
+    	}
+    }
+
+    /**
+     * Counts the people in each age interval.
+     * <p>
+     * People are classified when added, through a table of the ages
+     * rebuilt by {@link #setAgeIntervals}, so the counts are
+     * available without visiting them.
+     *
+     * @return the number of people for each interval, in the order of {@link #getAgeIntervals}
+     */
+    public int[] countByInterval() {
+    	lock.readLock().lock();
+    	try {
+    		int[] res = new int[index.size()];
+    		for (int i=0;i<res.length;i++) {
+    			res[i] = index.count(i);
+    		}
+    		return res;
+    	} finally {
+    		lock.readLock().unlock();
+    	}
+    }
+
+    /**
+     * Retrieves people in the given interval, sorted by SSN.
+     * Intervals defined through {@link #setAgeIntervals} are looked up
+     * by label in the age index, any other range is parsed and requires
+     * a full scan.
+     *
+     * @param range age interval label
+     * @return the rows of the people in the age interval
+     */
+    private int[] inInterval(String range) {
+    	int found = index.find(range);
+    	if (found >= 0) {
+    		return index.members(found);
+    	}
     	int start =0;
     	int end = 0;
     	int c = 0;
@@ -140,15 +351,19 @@ public class Vaccines {
     	}else {
     		end = Integer.MAX_VALUE;
     	}
-    	
-    	
-    	for (Person p :people.values()) {
-    		int age = getAge(p.getSsn());
+    	found = index.find(start, end);
+    	if (found >= 0) {
+    		return index.members(found);
+    	}
+    	int[] res = new int[people.size()];
+    	int n = 0;
+    	for (int row :people.ordered()) {
+    		int age = CURRENT_YEAR - store.getYear(row);
     		if(age >=start && age <end) {
-    			res.add(p.getSsn());
+    			res[n++] = row;
     		}
     	}
-        return res;
+        return Arrays.copyOf(res, n);
     }
 
     // R2
@@ -159,10 +374,19 @@ public class Vaccines {
      * @throws VaccineException in case of duplicate name
      */
     public void defineHub(String name) throws VaccineException {
-    	if (hubs.containsKey(name)) {
-    		throw new VaccineException();
+    	lock.writeLock().lock();
+    	try {
+    		if (hubs.containsKey(name)) {
+    			throw new VaccineException();
+    		}
+    		Hub h = new Hub(name);
+    		h.id = hubList.size();
+    		h.resetSlots(slots);
+    		hubs.put(name,h);
+    		hubList.add(h);
+    	} finally {
+    		lock.writeLock().unlock();
     	}
-    	hubs.put(name,new Hub(name));
     }
 
     /**
@@ -185,13 +409,21 @@ public class Vaccines {
      * @throws VaccineException in case of undefined hub, or any number of personnel not greater than 0.
      */
     public void setStaff(String name, int countDoctors, int countNurse, int o) throws VaccineException {
-    	if (countDoctors<=0 ||   countNurse <= 0 ||  o <=0 || !hubs.containsKey(name)) {
-    		throw new VaccineException();
+    	lock.readLock().lock();
+    	try {
+    		if (countDoctors<=0 ||   countNurse <= 0 ||  o <=0 || !hubs.containsKey(name)) {
+    			throw new VaccineException();
+    		}
+    		Hub h = hubs.get(name);
+    		int before = h.getCapacity();
+    		h.setStaff(countDoctors, countNurse, o);
+    		if (h.getCapacity() > before) {
+    			// slots left out of the queues as full may have room again
+    			h.resetQueues(slots);
+    		}
+    	} finally {
+    		lock.readLock().unlock();
     	}
-    	Hub h = hubs.get(name);
-    	h.setDoc(countDoctors);
-    	h.setNurse(countNurse);
-    	h.setOther(o);
     }
 
     /**
@@ -226,39 +458,193 @@ public class Vaccines {
      * @throws VaccineException in case of error in the header
      */
     public long loadPeople(Reader people) throws IOException, VaccineException {
-    	List<String> line = new ArrayList<>();
-        BufferedReader buffReader = null;
-        long c =0;
-		try {
-			buffReader= new BufferedReader(people);
+		try (BufferedReader buffReader = new BufferedReader(people)) {
+			return readPeople(buffReader);
+		}
+    }
+
+    /**
+     * Load people information stored in a CSV file.
+     * <p>
+     * Same as {@link #loadPeople(Reader)}, the file is read
+     * through a channel with a large buffer and decoded as UTF-8.
+     *
+     * @param file path of the CSV file
+     * @return number of correctly added people
+     * @throws IOException in case of IO error, or if the file is not valid UTF-8
+     * @throws VaccineException in case of error in the header
+     */
+    public long loadPeople(Path file) throws IOException, VaccineException {
+		try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ);
+			 BufferedReader buffReader = new BufferedReader(
+					 Channels.newReader(ch, CsvChunk.decoder(), LOAD_BUFFER), LOAD_BUFFER)) {
+			return readPeople(buffReader);
+		}
+    }
+
+    /**
+     * Load people information stored in a CSV file using
+     * several threads.
+     * <p>
+     * The file is split into line-aligned ranges that are parsed
+     * in parallel on the common fork-join pool, the parsed lines
+     * are then added in file order; the result, including duplicate
+     * SSNs and the line numbers notified to the load listener,
+     * is the same as {@link #loadPeople(Path)}.
+     *
+     * @param file path of the CSV file
+     * @return number of correctly added people
+     * @throws IOException in case of IO error, or if the file is not valid UTF-8
+     * @throws VaccineException in case of error in the header
+     */
+    public long loadPeopleParallel(Path file) throws IOException, VaccineException {
+		try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = ch.size();
+			int chunks = (int) Math.max(size / MAX_CHUNK + 1,
+					Math.min(size / MIN_CHUNK, 4 * ForkJoinPool.getCommonPoolParallelism()));
+			// chunks are taken off the queue as they are merged, so their lines can be collected
+			Queue<ForkJoinTask<CsvChunk>> tasks = new ArrayDeque<>();
+			long from = 0;
+			for (int i = 1; i <= chunks && from < size; i++) {
+				long to = i == chunks ? size : CsvChunk.lineStart(ch, Math.max(from, size / chunks * i), size);
+				long start = from;
+				tasks.add(ForkJoinPool.commonPool().submit(() -> CsvChunk.parse(ch, start, to)));
+				from = to;
+			}
+			lock.writeLock().lock();
+			try {
+				return mergePeople(tasks);
+			} finally {
+				lock.writeLock().unlock();
+				tasks.forEach(t -> t.cancel(false));
+			}
+		}
+    }
+
+    private long mergePeople(Queue<ForkJoinTask<CsvChunk>> tasks) throws IOException, VaccineException {
+		int lineNo = 0;
+		long c = 0;
+		ForkJoinTask<CsvChunk> t;
+		while ((t = tasks.poll()) != null) {
+			CsvChunk chunk;
+			try {
+				chunk = t.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException(e);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof IOException) {
+					throw (IOException) e.getCause();
+				}
+				throw new IOException(e.getCause());
+			}
+			for (int i = 0; i < chunk.lines; i++) {
+				lineNo++;
+				if (lineNo == 1) {
+					String line = chunk.line(i);
+					if (!isHeader(line, new String[4])) {
+						if(lst!=null) lst.accept(lineNo,line);
+						throw new VaccineException();
+					}
+				} else if (chunk.state[i] == CsvChunk.BAD) {
+					if(lst!=null) lst.accept(lineNo,chunk.line(i));
+				} else if (chunk.state[i] == CsvChunk.BAD_YEAR && people.get(chunk.ssn[i]) < 0) {
+					// fails as the sequential load does
+					String[] data = new String[4];
+					splitFields(chunk.line(i), data);
+					throw new NumberFormatException("For input string: \"" + data[3] + "\"");
+				} else if (chunk.state[i] == CsvChunk.OK && add(chunk.first[i],chunk.last[i],chunk.ssn[i],chunk.year[i])) {
+					c++;
+				} else {
+					if(lst!=null) lst.accept(lineNo,chunk.line(i));
+				}
+			}
+			if (chunk.ended) {
+				break;
+			}
+		}
+		// every person line has been either added or rejected
+		metrics.loaded(Math.max(lineNo - 1, 0), Math.max(lineNo - 1, 0) - c);
+		return c;
+    }
+
+    private long readPeople(BufferedReader buffReader) throws IOException, VaccineException {
+    	lock.writeLock().lock();
+    	try {
+			String[] data = new String[4];
+			String line;
+			int lineNo = 0;
+			long c =0;
 			//checking if the line is not empty
-			while (line.add(buffReader.readLine()) && line.get(line.size()-1)!=null && !line.get(line.size()-1).equals("")) {
-				//System.out.println(line.get(line.size()-1));
-	
-				String[] data = line.get(line.size()-1).split(",");
-				if (line.size()==1) {
-					if (data.length!=4 ||!data[0].equals("SSN") || !data[1].equals("LAST") || !data[2].equals("FIRST") || !data[3].equals("YEAR")) {
-						if(lst!=null) lst.accept(line.size(),line.get(line.size()-1));
+			while ((line = buffReader.readLine()) != null && !line.isEmpty()) {
+				lineNo++;
+				if (lineNo==1) {
+					if (!isHeader(line, data)) {
+						if(lst!=null) lst.accept(lineNo,line);
 						throw new VaccineException();
 					}
 				}
 				else {
-					if (data.length!=4 ||data[0].equals("") || data[1].equals("") || data[2].equals("") || data[3].equals("") || this.people.containsKey(data[0]) ) {
-						if(lst!=null) lst.accept(line.size(),line.get(line.size()-1));
-					}else {
-						addPerson(data[2],data[1],data[0],Integer.parseInt(data[3]));
+					if (splitFields(line, data)!=4 ||data[0].isEmpty() || data[1].isEmpty() || data[2].isEmpty() || data[3].isEmpty()) {
+						if(lst!=null) lst.accept(lineNo,line);
+						continue;
+					}
+					int year;
+					try {
+						year = Integer.parseInt(data[3]);
+					} catch (NumberFormatException e) {
+						// duplicates are reported even with an invalid year
+						if (this.people.get(data[0]) < 0) {
+							throw e;
+						}
+						if(lst!=null) lst.accept(lineNo,line);
+						continue;
+					}
+					if (add(data[2],data[1],data[0],year)) {
 						c++;
+					} else {
+						if(lst!=null) lst.accept(lineNo,line);
 					}
 				}
-				
 			}
-		}catch (IOException e) {
-			throw new IOException();
-		}finally {
-			people.close();
-			buffReader.close();
-		}
-        return c;
+			// every person line has been either added or rejected
+			metrics.loaded(Math.max(lineNo - 1, 0), Math.max(lineNo - 1, 0) - c);
+    		return c;
+    	} finally {
+    		lock.writeLock().unlock();
+    	}
+    }
+
+    private static boolean isHeader(String line, String[] data) {
+    	return splitFields(line, data)==4 && data[0].equals("SSN") && data[1].equals("LAST") && data[2].equals("FIRST") && data[3].equals("YEAR");
+    }
+
+    /**
+     * Splits a CSV line on commas, with the same result as {@code line.split(",")}
+     * (trailing empty fields are discarded) but without using regular expressions.
+     * Only the first {@code fields.length} fields are stored.
+     *
+     * @param line the CSV line
+     * @param fields array receiving the fields
+     * @return the number of fields in the line
+     */
+    static int splitFields(String line, String[] fields) {
+    	int n = 0, count = 0, start = 0;
+    	while (true) {
+    		int comma = line.indexOf(',', start);
+    		int end = comma < 0 ? line.length() : comma;
+    		if (n < fields.length) {
+    			fields[n] = line.substring(start, end);
+    		}
+    		n++;
+    		if (end > start) {
+    			count = n;
+    		}
+    		if (comma < 0) {
+    			return count;
+    		}
+    		start = comma + 1;
+    	}
     }
 
     // R4
@@ -266,19 +652,28 @@ public class Vaccines {
      * Define the amount of working hours for the days of the week.
      *
      * Exactly 7 elements are expected, where the first one correspond to Monday.
+     * The hours replace those defined previously, if any.
      *
      * @param hours workings hours for the 7 days.
      * @throws VaccineException if there are not exactly 7 elements or if the sum of all hours is less than 0 ore greater than 24*7.
      */
     public void setHours(int... hours) throws VaccineException {
-    	if(hours.length!=7) {
-    		throw new VaccineException();
-    	}
-    	for (int i:hours) {
-    		if(i>12) {
+    	lock.writeLock().lock();
+    	try {
+    		if(hours.length!=7) {
     			throw new VaccineException();
     		}
-    		this.hours.add(i);
+    		for (int i:hours) {
+    			if(i>SlotTable.MAX_HOURS) {
+    				throw new VaccineException();
+    			}
+    		}
+    		slots = new SlotTable(hours);
+    		for (Hub h : hubList) {
+    			h.resetSlots(slots);
+    		}
+    	} finally {
+    		lock.writeLock().unlock();
     	}
     }
 
@@ -296,23 +691,38 @@ public class Vaccines {
      * @return the list hours for each day of the week
      */
     public List<List<String>> getHours() {
-    	List<List<String>> res = new LinkedList<>();
-    	for(int i=0;i<7;i++) {
-    		List<String> times = new LinkedList<>();
-    		for (int j=0;j<hours.get(i);j++) {
-    			String st = String.format("%02d:%02d",9+j,00);
-    			times.add(st);
-    			st = String.format("%02d:%02d",9+j,15);
-    			times.add(st);
-    			st = String.format("%02d:%02d",9+j,30);
-    			times.add(st);
-    			st = String.format("%02d:%02d",9+j,45);
-    			times.add(st);
-    		}
-    		res.add(times);
-    	}
-    	
-        return res;
+        return slots.labels();
+    }
+
+    /**
+     * Retrieves the number of people assigned to a time slot of a hub on a given day.
+     * <p>
+     * People allocated to a hub on a day are assigned to the least occupied
+     * time slot (see {@link #getHours}), each slot taking a quarter of the
+     * hourly capacity of the hub; people exceeding the capacity of the day
+     * are allocated without a slot.
+     *
+     * @param hubName name of the hub
+     * @param d day of week index (0 = Monday)
+     * @param slot time slot, as {@code "09:15"}
+     * @return the number of people in the slot
+     * @throws VaccineException in case of undefined hub, invalid day or slot
+     */
+    public int getSlotOccupancy(String hubName, int d, String slot) throws VaccineException {
+    	lock.readLock().lock();
+    	try {
+    		Hub h = hubs.get(hubName);
+    		if (h == null || d < 0 || d >= 7) {
+    			throw new VaccineException();
+    		}
+    		int j = slots.indexOf(d, slot);
+    		if (j < 0) {
+    			throw new VaccineException();
+    		}
+    		return h.occupancy.get(slots.slot(d, j));
+    	} finally {
+    		lock.readLock().unlock();
+    	}
     }
 
     /**
@@ -325,7 +735,7 @@ public class Vaccines {
      */
     public int getDailyAvailable(String hubName, int d) {
     	Hub h = hubs.get(hubName);
-        return h.getCapacity()*hours.get(d);
+        return h.getCapacity()*slots.hours(d);
     }
 
     /**
@@ -365,49 +775,96 @@ public class Vaccines {
      * persons allocated to that day
      * <p>
      * <b>N.B.</b> no particular order of allocation is guaranteed
+     * <p>
+     * Only the places of the day not yet taken by previous allocations
+     * or bookings (see {@link #book}) are allocated, so that the people
+     * allocated to a hub on a day never exceed its availability
+     * until {@link #clearAllocation} is invoked.
      *
      * @param hubName name of the hub
      * @param d day of week index (0 = Monday)
      * @return the list of daily allocations
      */
     public List<String> allocate(String hubName, int d) {
-    	List<String> res = new LinkedList<>();
-    	Hub h = hubs.get(hubName);
-    	int cap = getDailyAvailable(hubName,d);
-		List<String> slots = getHours().get(d);
-		int totAllocated = 0;
-		List<String> intervals = (List<String>) getAgeIntervals();
-		for (int i=intervals.size()-1;i>=0;i--) {
-			int c =0, trun = truncate((cap - totAllocated) *0.4);
-			String interval =  intervals.get(i);
-			for(String ssn:getInInterval(interval)) {
-				Person p = people.get(ssn);
-				if ( p.getSt().equals(STATUS.NOT_ALLOCATED) &&c<trun) {
-					p.setSt(STATUS.ALLOCATED);
-					p.setHub(h);
-					c++;
-					totAllocated++;
-					res.add(p.getSsn());
-				}
+    	long start = System.nanoTime();
+    	Hub h = null;
+    	List<AllocationEvent> events = feeds.isEmpty() ? null : new ArrayList<>();
+    	lock.readLock().lock();
+    	try {
+    		List<String> res = new ArrayList<>();
+    		h = hubs.get(hubName);
+    		// all the places left are taken, those not used are given back
+    		int daily = getDailyAvailable(hubName,d);
+    		int cap = h.reserve(d, daily, daily);
+			int totAllocated = 0;
+			for (int i=index.size()-1;i>=0;i--) {
+				int n = index.allocate(i, truncate((cap - totAllocated) *0.4), h, d, res, events);
+				metrics.allocated(i, n);
+				totAllocated += n;
 			}
-		}
 	
-		if(totAllocated<cap) {
-			for (int i=intervals.size()-1;i>=0;i--) {
-				String interval =  intervals.get(i);
-				for(String ssn:getInInterval(interval)) {
-					Person p = people.get(ssn);
-					if (p.getSt().equals(STATUS.NOT_ALLOCATED) && totAllocated<cap) {
-						p.setSt(STATUS.ALLOCATED);
-						p.setHub(h);
-						totAllocated++;
-						res.add(p.getSsn());
-					}
-				}
+			for (int i=index.size()-1;i>=0 && totAllocated<cap;i--) {
+				int n = index.allocate(i, cap - totAllocated, h, d, res, events);
+				metrics.allocated(i, n);
+				totAllocated += n;
 			}
-		}
+			h.release(d, cap - totAllocated);
 		
-		return res;
+			return res;
+    	} finally {
+    		lock.readLock().unlock();
+    		commitJournal();
+    		if (h != null) {
+    			h.latency.record(System.nanoTime() - start);
+    		}
+    		publish(events);
+    	}
+    }
+
+    /**
+     * Books a single person in a hub on a given day of the week.
+     * <p>
+     * The booking succeeds if the person is not allocated yet and
+     * the hub has still places available that day; bookings and
+     * allocations (see {@link #allocate} and {@link #weekAllocate})
+     * take places from the same availability of the hub and day
+     * until {@link #clearAllocation} is invoked.
+     * <p>
+     * Bookings and allocations can be performed concurrently by
+     * several threads, each person is allocated at most once.
+     *
+     * @param hubName name of the hub
+     * @param d day of week index (0 = Monday)
+     * @param ssn "codice fiscale" of the person
+     * @return {@code true} if the person has been booked
+     * @throws VaccineException in case of undefined hub or person, or invalid day
+     */
+    public boolean book(String hubName, int d, String ssn) throws VaccineException {
+    	List<AllocationEvent> events = feeds.isEmpty() ? null : new ArrayList<>(1);
+    	lock.readLock().lock();
+    	try {
+    		Hub h = hubs.get(hubName);
+    		int row = people.get(ssn);
+    		if (h == null || row < 0 || d < 0 || d >= 7) {
+    			throw new VaccineException();
+    		}
+    		if (h.reserve(d, 1, getDailyAvailable(hubName, d)) == 0) {
+    			return false;
+    		}
+    		if (!index.book(row, h, d, events)) {
+    			h.release(d, 1);
+    			return false;
+    		}
+    		int i = index.intervalOfYear(store.getYear(row));
+    		if (i >= 0) {
+    			metrics.allocated(i, 1);
+    		}
+    		return true;
+    	} finally {
+    		lock.readLock().unlock();
+    		commitJournal();
+    		publish(events);
+    	}
     }
     
     
@@ -425,8 +882,25 @@ public class Vaccines {
      * clears their allocation status
      */
     public void clearAllocation() {
-    	for (Person p:people.values()) {
-    		p.setSt(STATUS.NOT_ALLOCATED);
+    	lock.writeLock().lock();
+    	try {
+    		clearAll();
+    	} finally {
+    		lock.writeLock().unlock();
+    		commitJournal();
+    	}
+    }
+
+    private void clearAll() {
+    	for (int row=0;row<store.size();row++) {
+    		store.clear(row);
+    	}
+    	index.clearAllocation();
+    	for (Hub h : hubList) {
+    		for (int d=0;d<7;d++) {
+    			h.taken.set(d, 0);
+    		}
+    		h.resetSlots(slots);
     	}
     }
 
@@ -445,19 +919,142 @@ public class Vaccines {
      * <b>N.B.</b> no particular order of allocation is guaranteed
      * but the same invocation (after {@link #clearAllocation}) must return the same
      * allocation.
+     * <p>
+     * As for {@link #allocate}, only the places not yet taken are allocated.
+     * <p>
+     * The places of all hubs and days are reserved first, following the
+     * same order as a sequence of {@link #allocate} invocations, and the
+     * reserved people are marked as allocated in parallel: the result is
+     * the same as the sequential allocation. Then the slots are assigned,
+     * in parallel as well unless feeds are subscribed (see {@link #subscribe}):
+     * in that case the hubs and days are completed one after the other and
+     * each one is delivered to the feeds before the next, out of any lock.
      *
      * @return the list of daily allocations
      */
     public List<Map<String, List<String>>> weekAllocate() {
-    	List<Map<String,List<String>>> res = new LinkedList<>();
+    	List<Hub> hs;
+    	AgeIndex idx;
+    	int[][] rows;
+    	List<List<String>> lists = null;
+    	lock.writeLock().lock();
+    	try {
+    		// places are reserved in the sequential order, then people are allocated in parallel
+    		hs = new ArrayList<>(hubs.values());
+    		idx = index;
+    		AllocationPlan plan = idx.plan();
+    		int[][] segments = new int[7*hs.size()][];
+    		for (int i =0;i<7;i++) {
+    			for (int k=0;k<hs.size();k++) {
+    				Hub h = hs.get(k);
+    				int[] s = plan.reserve(getDailyAvailable(h.getName(),i) - h.taken.get(i));
+    				h.taken.addAndGet(i, AllocationPlan.size(s));
+    				segments[i*hs.size()+k] = s;
+    			}
+    		}
+    		rows = IntStream.range(0, segments.length).parallel()
+    				.mapToObj(t -> idx.mark(segments[t], hs.get(t%hs.size())))
+    				.toArray(int[][]::new);
+    		idx.commit(plan);
+    		for (int[] s : segments) {
+    			metrics.allocated(s);
+    		}
+    		if (feeds.isEmpty()) {
+    			lists = IntStream.range(0, rows.length).parallel()
+    					.mapToObj(t -> idx.assign(rows[t], hs.get(t%hs.size()), t/hs.size(), null))
+    					.collect(Collectors.toList());
+    		}
+    	} finally {
+    		lock.writeLock().unlock();
+    		commitJournal();
+    	}
+    	if (lists == null) {
+    		// people are already marked, so other operations skip them while each hub and day is delivered
+    		lists = new ArrayList<>(rows.length);
+    		for (int t = 0; t < rows.length; t++) {
+    			List<AllocationEvent> events = new ArrayList<>(rows[t].length);
+    			lock.readLock().lock();
+    			try {
+    				lists.add(idx.assign(rows[t], hs.get(t%hs.size()), t/hs.size(), events));
+    			} finally {
+    				lock.readLock().unlock();
+    				commitJournal();
+    			}
+    			publish(events);
+    		}
+    	}
+
+    	List<Map<String,List<String>>> res = new ArrayList<>();
     	for (int i =0;i<7;i++) {
     		Map<String,List<String>> m = new LinkedHashMap<>();
-    		for (String name:hubs.keySet()) {
-    			m.put(name,allocate(name,i));
+    		for (int k=0;k<hs.size();k++) {
+    			m.put(hs.get(k).getName(),lists.get(i*hs.size()+k));
     		}
     		res.add(m);
     	}
-        return res;
+    	return res;
+    }
+
+    /**
+     * Creates an exporter writing the current allocation as CSV lines
+     * (hub, day, slot and SSN) to a channel.
+     * <p>
+     * The lines are encoded from the people store into a direct buffer
+     * owned by the exporter, without building the lists of SSNs returned
+     * by {@link #weekAllocate}; the exporter should be kept and reused
+     * for repeated exports.
+     *
+     * @return the exporter
+     */
+    public AllocationExporter exporter() {
+    	return new AllocationExporter(this, AllocationExporter.BUFFER);
+    }
+
+    /**
+     * Subscribes to the allocations performed from now on by {@link #allocate},
+     * {@link #book} and {@link #weekAllocate}.
+     * <p>
+     * Allocations are delivered out of any lock by the thread invoking the
+     * operation: those of {@link #allocate} and {@link #book} when the
+     * operation completes, those of {@link #weekAllocate} for each hub and
+     * day as soon as it is complete, while the following ones are still to
+     * be allocated. When the feed is full the operation waits for the
+     * consumer, so notifications proceed during a large allocation with
+     * memory bounded by the capacity of the feed and the allocation of a
+     * hub on a day. The consumer can query the system, and run on any
+     * thread, including those of the common pool, but must not allocate,
+     * since it would wait for its own feed. The feed must be closed when
+     * no longer needed.
+     *
+     * @param capacity maximum number of allocations kept by the feed
+     * @return the feed of the allocations
+     */
+    public AllocationFeed subscribe(int capacity) {
+    	AllocationFeed f = new AllocationFeed(capacity, feeds);
+    	feeds.add(f);
+    	return f;
+    }
+
+    /**
+     * Creates a planner for an allocation campaign of several weeks.
+     * <p>
+     * The planner allocates the people not yet allocated as {@link #weekAllocate}
+     * would do week after week: the first week has the places not yet taken,
+     * the following ones all the places of the hubs. The allocation status
+     * of the people is not changed: weeks are computed on request and can be
+     * streamed one at a time. Staffing changes can be applied to the plan
+     * from any week on, recomputing only the following weeks.
+     *
+     * @param weeks number of weeks of the campaign
+     * @return the planner
+     */
+    public WeekPlanner planWeeks(int weeks) {
+    	lock.writeLock().lock();
+    	try {
+    		return new WeekPlanner(this, weeks);
+    	} finally {
+    		lock.writeLock().unlock();
+    	}
     }
 
     // R5
@@ -469,14 +1066,12 @@ public class Vaccines {
      * @return proportion of allocated people
      */
     public double propAllocated() {
-    	int c  = 0;
-    	List<Map<String, List<String>>> tmp = weekAllocate();
-    	for (int i=0;i<7;i++) {
-    		for (List<String> list : tmp.get(i).values()) {
-    			c+=list.size();
-    		}
+    	lock.readLock().lock();
+    	try {
+    		return 1.0*index.allocated()/people.size();
+    	} finally {
+    		lock.readLock().unlock();
     	}
-        return 1.0*c/people.size();
     }
 
     /**
@@ -490,22 +1085,17 @@ public class Vaccines {
      * @return proportion of allocated people by age interval
      */
     public Map<String, Double> propAllocatedAge() {
-    	Map<String,Double> res = new LinkedHashMap<>();
-    	List<String> intervals = (List<String>) getAgeIntervals();
-    	int c=0;
-    	int t=people.size();
-		for (int i=intervals.size()-1;i>=0;i--) {
-			c=0;
-			String interval =  intervals.get(i);
-			for(String st:getInInterval(interval)) {
-				Person p = people.get(st);
-				if (p.getSt().equals(STATUS.ALLOCATED) ) {
-					c++;
-				}
-			}
-			res.put(interval,1.0*c/t);
-		}
-        return res;
+    	lock.readLock().lock();
+    	try {
+    		Map<String,Double> res = new LinkedHashMap<>();
+    		int t=people.size();
+    		for (int i=index.size()-1;i>=0;i--) {
+    			res.put(index.label(i),1.0*index.allocated(i)/t);
+    		}
+    		return res;
+    	} finally {
+    		lock.readLock().unlock();
+    	}
     }
 
     /**
@@ -519,23 +1109,115 @@ public class Vaccines {
      * @return
      */
     public Map<String, Double> distributionAllocated() {
-    	Map<String,Double> res = new LinkedHashMap<>();
-    	List<String> intervals = (List<String>) getAgeIntervals();
-    	int c=0;
-    	int t=0;
-    	for(Person p:people.values()) if(p.getSt().equals(STATUS.ALLOCATED)) t++;
-		for (int i=intervals.size()-1;i>=0;i--) {
-			String interval =  intervals.get(i);
-			c=0;
-			for(String st:getInInterval(interval)) {
-				Person p = people.get(st);
-				if (p.getSt().equals(STATUS.ALLOCATED) ) {
-					c++;
-				}	
-			}
-			res.put(interval,1.0*c/t);
-		}
-        return res;
+    	lock.readLock().lock();
+    	try {
+    		Map<String,Double> res = new LinkedHashMap<>();
+    		int t=index.allocated();
+    		for (int i=index.size()-1;i>=0;i--) {
+    			res.put(index.label(i),1.0*index.allocated(i)/t);
+    		}
+    		return res;
+    	} finally {
+    		lock.readLock().unlock();
+    	}
+    }
+
+    /**
+     * Retrieves a snapshot of the allocation statistics.
+     * <p>
+     * The statistics are kept up to date by the allocations, so
+     * the snapshot is computed in time proportional to the number
+     * of age intervals and can be polled frequently.
+     *
+     * @return the current allocation statistics
+     */
+    public AllocationStats getAllocationStats() {
+    	lock.readLock().lock();
+    	try {
+    		int n = index.size();
+    		String[] labels = new String[n];
+    		int[] count = new int[n];
+    		int[] allocated = new int[n];
+    		for (int i=0;i<n;i++) {
+    			labels[i] = index.label(i);
+    			count[i] = index.count(i);
+    			allocated[i] = index.allocated(i);
+    		}
+    		return new AllocationStats(people.size(), index.allocated(), labels, count, allocated);
+    	} finally {
+    		lock.readLock().unlock();
+    	}
+    }
+
+    /**
+     * Retrieves a snapshot of the operational metrics: person lines read
+     * and rejected by the loads, people allocated by age interval since
+     * the intervals were defined, and the latency of {@link #allocate}
+     * for each hub.
+     * <p>
+     * Metrics are recorded by the operations without locking or allocating
+     * and are not reset by {@link #clearAllocation}.
+     *
+     * @return the current metrics
+     */
+    public MetricsSnapshot getMetrics() {
+    	lock.readLock().lock();
+    	try {
+    		String[] labels = new String[index.size()];
+    		for (int i=0;i<labels.length;i++) {
+    			labels[i] = index.label(i);
+    		}
+    		Map<String,LatencyHistogram> latency = new LinkedHashMap<>();
+    		for (Hub h : hubList) {
+    			latency.put(h.getName(), h.latency.copy());
+    		}
+    		return new MetricsSnapshot(metrics.rowsRead.get(), metrics.rowsRejected.get(),
+    				labels, metrics.allocations(), latency);
+    	} finally {
+    		lock.readLock().unlock();
+    	}
+    }
+
+    /**
+     * Publishes the operational metrics (see {@link #getMetrics}) on the
+     * platform MBean server, as a {@link VaccinesMetricsMXBean}.
+     * The bean can be removed with {@code MBeanServer.unregisterMBean}.
+     *
+     * @param name the name of the bean
+     * @throws JMException if the bean cannot be registered
+     */
+    public void registerMetrics(ObjectName name) throws JMException {
+    	ManagementFactory.getPlatformMBeanServer().registerMBean(
+    			new StandardMBean(new MetricsBean(this), VaccinesMetricsMXBean.class, true), name);
+    }
+
+    /**
+     * Evaluates the effect of changes to the staffing of the hubs,
+     * without changing the hubs or the allocation of people.
+     * <p>
+     * For each scenario the result reports the allocation statistics
+     * that would follow an invocation of {@link #weekAllocate} with the
+     * staffing changed as described by the scenario.
+     * Scenarios are evaluated in parallel on a copy of the state
+     * taken when the method is invoked.
+     *
+     * @param scenarios the staffing changes to evaluate
+     * @return the allocation statistics for each scenario, in the same order
+     * @throws VaccineException if a scenario refers to an undefined hub
+     *         or leaves a hub without personnel of some kind
+     */
+    public List<AllocationStats> simulate(List<StaffingScenario> scenarios) throws VaccineException {
+    	StaffingSimulation sim;
+    	lock.writeLock().lock();
+    	try {
+    		sim = new StaffingSimulation(this);
+    	} finally {
+    		lock.writeLock().unlock();
+    	}
+    	for (StaffingScenario s : scenarios) {
+    		sim.check(s);
+    	}
+    	return scenarios.parallelStream().map(sim::evaluate).collect(Collectors.toList());
     }
 
     // R6
@@ -551,4 +1233,198 @@ public class Vaccines {
     public void setLoadListener(BiConsumer<Integer, String> lst) {
     	this.lst = lst;
     }
+
+    // Snapshots
+    /**
+     * Saves the whole state of the system in a binary snapshot file:
+     * age intervals, working hours, hubs with their staffing,
+     * and people with their allocation.
+     * <p>
+     * The snapshot is written to a temporary file that then replaces
+     * the given one, so an existing snapshot is never left half written.
+     * The open journal, if any, is emptied as its content is now part
+     * of the snapshot.
+     *
+     * @param file path of the snapshot file
+     * @throws IOException in case of IO error, or if the open journal
+     *         has failed and must be closed first (see {@link #openJournal})
+     */
+    public void saveSnapshot(Path file) throws IOException {
+    	Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+    	lock.writeLock().lock();
+    	try {
+    		if (journal != null) {
+    			journal.check();
+    		}
+    		try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE,
+    				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+    			Snapshot.write(this, ch);
+    		}
+    		Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    		if (journal != null) {
+    			journal.truncate();
+    		}
+    	} finally {
+    		lock.writeLock().unlock();
+    	}
+    }
+
+    /**
+     * Restores the state of the system from a snapshot file
+     * written by {@link #saveSnapshot}.
+     * <p>
+     * The file is mapped in memory and its checksum verified
+     * before restoring anything. The system must be empty: no people,
+     * hubs or age intervals defined; it is left empty if the
+     * snapshot cannot be restored.
+     *
+     * @param file path of the snapshot file
+     * @throws IOException in case of IO error
+     * @throws VaccineException if the system is not empty or the file is not a valid snapshot
+     */
+    public void loadSnapshot(Path file) throws IOException, VaccineException {
+    	lock.writeLock().lock();
+    	try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+    		if (people.size() > 0 || !hubs.isEmpty() || intervals.length > 0) {
+    			throw new VaccineException();
+    		}
+    		try {
+    			Snapshot.read(this, ch);
+    		} catch (IOException | VaccineException | RuntimeException e) {
+    			reset();
+    			throw e;
+    		}
+    	} finally {
+    		lock.writeLock().unlock();
+    	}
+    }
+
+    // Journal
+    /**
+     * Starts recording the changes of allocation status in an append-only
+     * journal file, so that they can be recovered by {@link #replayJournal}
+     * on top of the last snapshot (see {@link #saveSnapshot}).
+     * <p>
+     * Allocations, bookings and clearing of the allocations are recorded;
+     * other changes, such as adding people or hubs, require a new snapshot.
+     * Each operation writes its records before returning, the file is
+     * forced to disk after {@code syncEvery} records have been written
+     * since the last time, so that a system crash loses at most
+     * those records.
+     * <p>
+     * If the journal cannot be written, the operations still complete
+     * and return their result, while the journal stops recording:
+     * the failure is reported by {@link #saveSnapshot}, which refuses
+     * to discard the journal, and by {@link #closeJournal}.
+     *
+     * @param file path of the journal, new records are appended
+     * @param syncEvery records between two syncs, 0 to sync only on {@link #closeJournal}
+     * @throws IOException in case of IO error
+     * @throws VaccineException if a journal is already open
+     */
+    public void openJournal(Path file, int syncEvery) throws IOException, VaccineException {
+    	lock.writeLock().lock();
+    	try {
+    		if (journal != null) {
+    			throw new VaccineException();
+    		}
+    		journal = new Journal(file, syncEvery);
+    		index.journal = journal;
+    	} finally {
+    		lock.writeLock().unlock();
+    	}
+    }
+
+    /**
+     * Stops recording the changes of allocation status,
+     * forcing the journal to disk.
+     * The journal is closed even if it has failed.
+     *
+     * @throws IOException in case of IO error, or if some records could not be written
+     */
+    public void closeJournal() throws IOException {
+    	lock.writeLock().lock();
+    	try {
+    		if (journal != null) {
+    			Journal j = journal;
+    			journal = null;
+    			index.journal = null;
+    			j.close();
+    		}
+    	} finally {
+    		lock.writeLock().unlock();
+    	}
+    }
+
+    /**
+     * Applies the changes of allocation status recorded in a journal,
+     * typically after restoring the snapshot it was started from.
+     * <p>
+     * People are recorded by their position in the snapshot, so the
+     * journal only applies to the snapshot it was started from.
+     * Records of people or hubs unknown to the system are ignored,
+     * as are those of people already allocated.
+     *
+     * @param file path of the journal
+     * @return the number of records read
+     * @throws IOException in case of IO error
+     * @throws VaccineException if a journal is open
+     */
+    public long replayJournal(Path file) throws IOException, VaccineException {
+    	lock.writeLock().lock();
+    	try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+    		if (journal != null) {
+    			throw new VaccineException();
+    		}
+    		long n = Journal.replay(ch, new Journal.Visitor() {
+    			@Override
+    			public void allocate(byte type, int row, int hub, int d, int j) {
+    				if (row < 0 || row >= store.size() || hub < 0 || hub >= hubList.size() || d < 0 || d >= 7) {
+    					return;
+    				}
+    				Hub h = hubList.get(hub);
+    				if (j < 0 || j >= slots.slots(d)) {
+    					j = -1;
+    				}
+    				if (index.restore(row, h, d, j)) {
+    					if (j >= 0) {
+    						h.occupancy.incrementAndGet(slots.slot(d, j));
+    					}
+    					h.taken.incrementAndGet(d);
+    				}
+    			}
+
+    			@Override
+    			public void clear() {
+    				clearAll();
+    			}
+    		});
+    		for (Hub h : hubList) {
+    			h.resetQueues(slots);
+    		}
+    		return n;
+    	} finally {
+    		lock.writeLock().unlock();
+    	}
+    }
+
+    /**
+     * Delivers the allocations of an operation to the feeds, out of any lock.
+     */
+    private void publish(List<AllocationEvent> events) {
+    	if (events != null) {
+    		for (AllocationEvent e : events) {
+    			for (AllocationFeed f : feeds) {
+    				f.publish(e);
+    			}
+    		}
+    	}
+    }
+
+    private void commitJournal() {
+    	Journal j = journal;
+    	if (j != null) {
+    		j.commit();
+    	}
+    }
 }
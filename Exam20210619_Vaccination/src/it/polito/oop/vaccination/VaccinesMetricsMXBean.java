@@ -0,0 +1,31 @@
+package it.polito.oop.vaccination;
+
+import java.util.Map;
+
+/**
+ * Management interface of the operational metrics,
+ * see {@link Vaccines#registerMetrics}.
+ * Latencies are in microseconds.
+ */
+public interface VaccinesMetricsMXBean {
+
+	long getRowsRead();
+
+	long getRowsRejected();
+
+	/**
+	 * People allocated by age interval, see {@link MetricsSnapshot#getAllocations}.
+	 */
+	Map<String, Long> getAllocations();
+
+	/**
+	 * Invocations of {@link Vaccines#allocate} by hub.
+	 */
+	Map<String, Long> getAllocateCount();
+
+	Map<String, Double> getAllocateP50();
+
+	Map<String, Double> getAllocateP99();
+
+	Map<String, Double> getAllocateMax();
+}
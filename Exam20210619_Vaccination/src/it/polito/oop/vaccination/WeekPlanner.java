@@ -0,0 +1,217 @@
+package it.polito.oop.vaccination;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Allocation plan for a campaign of several weeks, see {@link Vaccines#planWeeks}.
+ * <p>
+ * Each week is allocated as {@link Vaccines#weekAllocate} would do
+ * after the previous weeks, starting from the people not allocated
+ * when the planner is created, without changing their allocation status.
+ * The first week has the places not yet taken when the planner is created,
+ * the following ones all the places of the hubs.
+ * The hourly capacity of each hub is kept for each week, so staffing
+ * changes can be planned from a given week on.
+ * <p>
+ * Weeks are computed on request: the planner only keeps, for the beginning
+ * of each week, how many people of each age interval have been allocated so far.
+ * A staffing change invalidates the weeks from the one it applies to, the
+ * previous ones are kept.
+ */
+public class WeekPlanner {
+
+	private final Lock lock;
+	private final PersonStore store;
+	private final Hub[] hubs;
+	private final int[] hours = new int[7];
+	/** places already taken for each hub and day, subtracted from the first week */
+	private final int[][] taken;
+	/** people to be allocated in each interval, in allocation order */
+	private final int[][] rows;
+	/** hourly capacity of each hub for each week */
+	private final int[][] hourly;
+	/** people allocated in each interval before each week */
+	private final int[][] next;
+	/** last week whose beginning is known */
+	private int valid;
+
+	WeekPlanner(Vaccines v, int weeks) {
+		this.lock = v.lock.readLock();
+		this.store = v.store;
+		this.hubs = v.hubList.toArray(new Hub[0]);
+		this.rows = v.index.pending();
+		this.taken = new int[hubs.length][7];
+		this.hourly = new int[weeks][hubs.length];
+		for (int d = 0; d < 7; d++) {
+			hours[d] = v.slots.hours(d);
+		}
+		for (int k = 0; k < hubs.length; k++) {
+			for (int d = 0; d < 7; d++) {
+				taken[k][d] = hubs[k].taken.get(d);
+			}
+			int capacity = hubs[k].getCapacity();
+			for (int w = 0; w < weeks; w++) {
+				hourly[w][k] = capacity;
+			}
+		}
+		next = new int[weeks + 1][];
+		next[0] = new int[rows.length];
+	}
+
+	/**
+	 * Number of weeks of the plan.
+	 */
+	public int getWeeks() {
+		return hourly.length;
+	}
+
+	/**
+	 * Computes the available vaccination slots for each hub
+	 * and for each day of a week, as {@link Vaccines#getAvailable}.
+	 *
+	 * @param w week index (0 = first week)
+	 * @return the map from hub names to the places for the 7 days
+	 */
+	public synchronized Map<String, List<Integer>> getAvailable(int w) {
+		Map<String, List<Integer>> res = new LinkedHashMap<>();
+		for (int k = 0; k < hubs.length; k++) {
+			List<Integer> days = new ArrayList<>(7);
+			for (int d = 0; d < 7; d++) {
+				days.add(hourly[w][k] * hours[d]);
+			}
+			res.put(hubs[k].getName(), days);
+		}
+		return res;
+	}
+
+	/**
+	 * Computes the allocation of a week, in the same format as {@link Vaccines#weekAllocate}.
+	 * The previous weeks are planned as needed, but their allocations are not built.
+	 *
+	 * @param w week index (0 = first week)
+	 * @return the list of daily allocations
+	 */
+	public synchronized List<Map<String, List<String>>> getWeek(int w) {
+		advance(w);
+		AllocationPlan plan = plan(w);
+		List<Map<String, List<String>>> res = new ArrayList<>(7);
+		lock.lock();
+		try {
+			for (int d = 0; d < 7; d++) {
+				Map<String, List<String>> m = new LinkedHashMap<>();
+				for (int k = 0; k < hubs.length; k++) {
+					int[] segments = plan.reserve(capacity(w, k, d));
+					List<String> ssns = new ArrayList<>(AllocationPlan.size(segments));
+					for (int s = 0; s < segments.length; s += 3) {
+						int[] r = rows[segments[s]];
+						for (int pos = segments[s + 1], end = pos + segments[s + 2]; pos < end; pos++) {
+							ssns.add(store.getSsn(r[pos]));
+						}
+					}
+					m.put(hubs[k].getName(), ssns);
+				}
+				res.add(m);
+			}
+		} finally {
+			lock.unlock();
+		}
+		return res;
+	}
+
+	/**
+	 * Streams the allocations of the weeks in order, each one computed
+	 * when the stream reaches it.
+	 *
+	 * @return the stream of the weekly allocations
+	 */
+	public Stream<List<Map<String, List<String>>>> stream() {
+		return IntStream.range(0, getWeeks()).mapToObj(this::getWeek);
+	}
+
+	/**
+	 * Plans a change of the staffing of a hub, from a week to the end of the plan.
+	 * The following weeks will be recomputed when requested.
+	 *
+	 * @param w first week of the new staffing
+	 * @param name name of the hub
+	 * @param countDoctors number of doctors
+	 * @param countNurse number of nurses
+	 * @param o number of other personnel
+	 * @throws VaccineException in case of undefined hub, invalid week, or any number of personnel not greater than 0.
+	 */
+	public synchronized void setStaff(int w, String name, int countDoctors, int countNurse, int o) throws VaccineException {
+		int k = hub(name);
+		if (countDoctors <= 0 || countNurse <= 0 || o <= 0 || w < 0 || w >= getWeeks()) {
+			throw new VaccineException();
+		}
+		setCapacity(w, k, Hub.capacity(countDoctors, countNurse, o));
+	}
+
+	/**
+	 * Applies the current staffing of the hubs (see {@link Vaccines#setStaff})
+	 * from a week to the end of the plan.
+	 * The following weeks will be recomputed when requested.
+	 *
+	 * @param w first week of the new staffing
+	 * @throws VaccineException in case of invalid week
+	 */
+	public synchronized void refresh(int w) throws VaccineException {
+		if (w < 0 || w >= getWeeks()) {
+			throw new VaccineException();
+		}
+		for (int k = 0; k < hubs.length; k++) {
+			setCapacity(w, k, hubs[k].getCapacity());
+		}
+	}
+
+	private void setCapacity(int w, int k, int capacity) {
+		for (int week = w; week < getWeeks(); week++) {
+			if (hourly[week][k] != capacity) {
+				hourly[week][k] = capacity;
+				valid = Math.min(valid, week);
+			}
+		}
+	}
+
+	private int hub(String name) throws VaccineException {
+		for (int k = 0; k < hubs.length; k++) {
+			if (hubs[k].getName().equals(name)) {
+				return k;
+			}
+		}
+		throw new VaccineException();
+	}
+
+	/**
+	 * Computes the beginning of the weeks up to the given one.
+	 */
+	private void advance(int w) {
+		for (; valid < w; valid++) {
+			AllocationPlan plan = plan(valid);
+			for (int d = 0; d < 7; d++) {
+				for (int k = 0; k < hubs.length; k++) {
+					plan.reserve(capacity(valid, k, d));
+				}
+			}
+			next[valid + 1] = plan.next;
+		}
+	}
+
+	private AllocationPlan plan(int w) {
+		int[] available = new int[rows.length];
+		for (int i = 0; i < rows.length; i++) {
+			available[i] = rows[i].length - next[w][i];
+		}
+		return new AllocationPlan(next[w], available);
+	}
+
+	private int capacity(int w, int k, int d) {
+		return hourly[w][k] * hours[d] - (w == 0 ? taken[k][d] : 0);
+	}
+}
@@ -0,0 +1,83 @@
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import clinic.Clinic;
+import clinic.NoSuchDoctor;
+import clinic.NoSuchPatient;
+
+public class PagingTest {
+
+	private static final int DOCTORS = 40;
+	private static final int PATIENTS = 300;
+
+	@Test
+	public void testPages() throws NoSuchPatient, NoSuchDoctor {
+		Clinic clinic = new Clinic();
+		for (int d = 0; d < DOCTORS; d++) {
+			clinic.addDoctor("Name" + d, "Surname" + d, "DOC" + d, 100 + d, "Physician");
+		}
+		// number of patients of each doctor, in order of definition
+		int[] num = new int[DOCTORS];
+		Random r = new Random(25);
+		for (int p = 0; p < PATIENTS; p++) {
+			clinic.addPatient("First" + p, "Last" + p, "PAT" + p);
+			// few distinct counts, so that many doctors share the same one
+			int d = r.nextInt(DOCTORS / 4) * 4;
+			clinic.assignPatientToDoctor("PAT" + p, 100 + d);
+			num[d]++;
+		}
+		assertPages(clinic, num);
+
+		// a patient assigned again counts for the new doctor too, the previous one keeps it
+		for (int p = 0; p < PATIENTS; p += 7) {
+			int d = r.nextInt(DOCTORS);
+			clinic.assignPatientToDoctor("PAT" + p, 100 + d);
+			num[d]++;
+		}
+		assertPages(clinic, num);
+	}
+
+	private static void assertPages(Clinic clinic, int[] num) {
+		List<Integer> order = new ArrayList<>();
+		for (int d = 0; d < DOCTORS; d++) {
+			order.add(d);
+		}
+		// the sort is stable, so ties keep the order of definition
+		order.sort(Comparator.comparing((Integer d) -> num[d]).reversed());
+		List<String> all = new ArrayList<>();
+		for (int d : order) {
+			all.add(String.format("%3d", num[d]) + " : " + (100 + d) + " Surname" + d + " Name" + d);
+		}
+		assertEquals(all, clinic.doctorsByNumPatients());
+		for (int offset = 0; offset <= DOCTORS + 2; offset++) {
+			for (int limit : new int[] {0, 1, 3, 10, DOCTORS}) {
+				List<String> expected = all.subList(Math.min(offset, DOCTORS), Math.min(offset + limit, DOCTORS));
+				assertEquals("Page " + offset + "+" + limit, expected, clinic.doctorsByNumPatients(offset, limit));
+			}
+		}
+	}
+
+	@Test
+	public void testNegative() {
+		Clinic clinic = new Clinic();
+		clinic.addDoctor("George", "Sun", "SNUGRG", 14, "Physician");
+		try {
+			clinic.doctorsByNumPatients(-1, 3);
+			fail("Negative offset accepted");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			clinic.doctorsByNumPatients(0, -1);
+			fail("Negative limit accepted");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,108 @@
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import clinic.Clinic;
+import clinic.NoSuchDoctor;
+import clinic.NoSuchPatient;
+
+public class StatsTest {
+
+	private static final int DOCTORS = 30;
+	private static final int PATIENTS = 200;
+	private static final String[] SURNAMES = {"Rossi", "Bianchi", "Verdi", "Neri"};
+	private static final String[] SPECIALIZATIONS = {"Physician", "Surgeon", "Dentist", "Pediatrician"};
+
+	/** first name, last name and specialization of each doctor id, in order of definition */
+	private final Map<Integer,String[]> defined = new LinkedHashMap<>();
+
+	private void addDoctor(Clinic clinic, String first, String last, int id, String specialization) {
+		clinic.addDoctor(first, last, "DOC" + id + first, id, specialization);
+		defined.put(id, new String[] {first, last, specialization});
+	}
+
+	@Test
+	public void testStats() throws NoSuchPatient, NoSuchDoctor {
+		Clinic clinic = new Clinic();
+		Random r = new Random(24);
+		for (int d = 0; d < DOCTORS; d++) {
+			// few names, so that the alphabetical order needs the order of definition, not of the ids
+			addDoctor(clinic, "Name" + d % 3, SURNAMES[d % SURNAMES.length], 100 + d * 7 % DOCTORS,
+					SPECIALIZATIONS[d % SPECIALIZATIONS.length]);
+		}
+		assertStats(clinic);
+		for (int p = 0; p < PATIENTS; p++) {
+			clinic.addPatient("First" + p, "Last" + p, "PAT" + p);
+			// only some doctors have patients
+			clinic.assignPatientToDoctor("PAT" + p, 100 + r.nextInt(DOCTORS / 2) * 2);
+			if (p % 50 == 0) {
+				assertStats(clinic);
+			}
+		}
+		assertStats(clinic);
+
+		// a doctor defined again starts with no patients, in the position of the previous one
+		addDoctor(clinic, "Anna", "Alberti", 100, "Surgeon");
+		addDoctor(clinic, "Name1", "Zeta", 101, "Oncologist");
+		addDoctor(clinic, "Name2", "Verdi", 102, "Oncologist");
+		assertStats(clinic);
+		addDoctor(clinic, "Name0", "Bianchi", 104, "Physician");
+		assertStats(clinic);
+		for (int p = 0; p < PATIENTS; p += 3) {
+			clinic.assignPatientToDoctor("PAT" + p, 100 + r.nextInt(DOCTORS));
+		}
+		assertStats(clinic);
+	}
+
+	/**
+	 * Checks the statistics against the patients of each doctor.
+	 */
+	private void assertStats(Clinic clinic) throws NoSuchDoctor {
+		Map<Integer,Integer> num = new LinkedHashMap<>();
+		int total = 0;
+		for (int id : defined.keySet()) {
+			num.put(id, clinic.getAssignedPatients(id).size());
+			total += num.get(id);
+		}
+
+		List<Integer> idle = new ArrayList<>();
+		for (int id : defined.keySet()) {
+			if (num.get(id) == 0) {
+				idle.add(id);
+			}
+		}
+		// the sort is stable, so ties keep the order of definition
+		idle.sort(Comparator.comparing((Integer id) -> defined.get(id)[1]).thenComparing(id -> defined.get(id)[0]));
+		assertEquals("Wrong idle doctors", idle, new ArrayList<>(clinic.idleDoctors()));
+
+		double average = (double) total / defined.size();
+		List<Integer> busy = new ArrayList<>();
+		for (int id : defined.keySet()) {
+			if (num.get(id) > average) {
+				busy.add(id);
+			}
+		}
+		assertEquals("Wrong busy doctors", busy, new ArrayList<>(clinic.busyDoctors()));
+
+		Map<String,Integer> bySpecialization = new TreeMap<>();
+		for (int id : defined.keySet()) {
+			bySpecialization.merge(defined.get(id)[2], num.get(id), Integer::sum);
+		}
+		List<String> specializations = new ArrayList<>(bySpecialization.keySet());
+		specializations.sort(Comparator.comparing((String s) -> bySpecialization.get(s)).reversed());
+		List<String> expected = new ArrayList<>();
+		for (String s : specializations) {
+			expected.add(String.format("%03d", bySpecialization.get(s)) + " - " + s);
+		}
+		assertEquals("Wrong patients per specialization", expected,
+				new ArrayList<>(clinic.countPatientsPerSpecialization()));
+	}
+}
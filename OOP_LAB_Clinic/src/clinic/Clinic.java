@@ -10,10 +10,14 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.Map.Entry;
@@ -23,9 +27,25 @@ import java.util.Map.Entry;
  * 
  */
 public class Clinic {
+	private static final Comparator<Doctor> DEFINITION = Comparator.comparingLong(doctor -> doctor.seq);
+	private static final Comparator<Doctor> ALPHABETICAL = Comparator.comparing(Doctor::getLast)
+			.thenComparing(Doctor::getFirst).thenComparing(DEFINITION);
+
 	Map<String,Patient> patients = new LinkedHashMap<>();
 	Map<Integer,Doctor> doctors = new LinkedHashMap<>();
 
+	// Aggregates updated by addDoctor() and assignPatientToDoctor(),
+	// so that the statistics do not need to visit all the doctors
+	private long seq;
+	/** total number of patients of all the doctors */
+	private long assigned;
+	/** number of doctors and of their patients for each specialization */
+	private final Map<String,int[]> perSpecialization = new HashMap<>();
+	/** doctors without patients, in alphabetical order */
+	private final Set<Doctor> idle = new TreeSet<>(ALPHABETICAL);
+	/** doctors by number of patients in order of definition, only non empty sets are kept */
+	private final TreeMap<Integer,Set<Doctor>> byNumPatients = new TreeMap<>();
+
 	/**
 	 * Add a new clinic patient.
 	 * 
@@ -65,7 +85,25 @@ public class Clinic {
 	 * @param specialization doctor's specialization
 	 */
 	public void addDoctor(String first, String last, String ssn, int docID, String specialization) {
-		doctors.put(docID, new Doctor(first,last,ssn,docID,specialization));
+		Doctor d = new Doctor(first,last,ssn,docID,specialization);
+		Doctor old = doctors.put(docID, d);
+		if (old != null) {
+			// the doctor replaces the previous one with the same id, and its position
+			d.seq = old.seq;
+			idle.remove(old);
+			leave(old, old.getNum());
+			assigned -= old.getNum();
+			int[] count = perSpecialization.get(old.getSpecialization());
+			count[1] -= old.getNum();
+			if (--count[0] == 0) {
+				perSpecialization.remove(old.getSpecialization());
+			}
+		} else {
+			d.seq = seq++;
+		}
+		perSpecialization.computeIfAbsent(specialization, k -> new int[2])[0]++;
+		idle.add(d);
+		join(d, 0);
 		patients.put(ssn,new Patient(first,last,ssn));
 	}
 
@@ -110,7 +148,27 @@ public class Clinic {
 		}
 		
 		p.setDoctor(d);
+		int n = d.getNum();
 		d.addPatient(p);
+		if (n == 0) {
+			idle.remove(d);
+		}
+		leave(d, n);
+		join(d, n + 1);
+		assigned++;
+		perSpecialization.get(d.getSpecialization())[1]++;
+	}
+
+	private void join(Doctor d, int n) {
+		byNumPatients.computeIfAbsent(n, k -> new TreeSet<>(DEFINITION)).add(d);
+	}
+
+	private void leave(Doctor d, int n) {
+		Set<Doctor> s = byNumPatients.get(n);
+		s.remove(d);
+		if (s.isEmpty()) {
+			byNumPatients.remove(n);
+		}
 	}
 	
 	/**
@@ -277,9 +335,10 @@ public class Clinic {
 	 * @return the collection of doctors' ids
 	 */
 	public Collection<Integer> idleDoctors(){
-		List<Integer> res = doctors.values().stream().filter(doctor -> doctor.getPatients().size() == 0)
-				.sorted(Comparator.comparing(Doctor::getLast).thenComparing(Doctor::getFirst))
-				.collect(Collectors.mapping(doctor -> doctor.getId(),Collectors.toList()));
+		List<Integer> res = new ArrayList<>(idle.size());
+		for (Doctor doctor : idle) {
+			res.add(doctor.getId());
+		}
 		return res;
 	}
 
@@ -290,16 +349,21 @@ public class Clinic {
 	 */
 	public Collection<Integer> busyDoctors(){
 		double avg = findAveragePatients();
-		List<Integer> res = doctors.values().stream().filter(doctor ->doctor.getPatients().size() > avg)
-				.collect(Collectors.mapping(doctor -> doctor.getId(), Collectors.toList()));
+		// only the doctors above the average are visited, in order of definition
+		List<Doctor> busy = new ArrayList<>();
+		for (Set<Doctor> s : byNumPatients.tailMap((int) avg, false).values()) {
+			busy.addAll(s);
+		}
+		busy.sort(DEFINITION);
+		List<Integer> res = new ArrayList<>(busy.size());
+		for (Doctor doctor : busy) {
+			res.add(doctor.getId());
+		}
 		return res;
 	}
 
 	private double findAveragePatients() {
-		int sum = doctors.values().stream()
-				.collect(Collectors.summingInt(doctor -> doctor.getPatients().size()));
-		double res = sum/doctors.size();
-		//System.out.println(res);
+		double res = assigned/doctors.size();
 		return res;
 	}
 	
@@ -309,18 +373,52 @@ public class Clinic {
 	 * The method returns list of strings formatted as "{@code ### : ID SURNAME NAME}" where {@code ###}
 	 * represent the number of patients (printed on three characters).
 	 * <p>
-	 * The list is sorted by decreasing number of patients.
+	 * The list is sorted by decreasing number of patients,
+	 * doctors with the same number of patients are in order of definition.
 	 * 
 	 * @return the collection of strings with information about doctors and patients count
 	 */
 	public Collection<String> doctorsByNumPatients(){
-		
-		List<String> res = doctors.values().stream()
-				.collect(Collectors.toMap(doctor -> String.format("%3d", doctor.getNum()),doctor -> doctor.desc()))
-				.entrySet().stream()
-				.sorted(Entry.comparingByKey(Comparator.reverseOrder()))
-				.collect(Collectors.mapping(entry -> entry.getKey() + " : " + entry.getValue(),Collectors.toList()));
-		
+		return doctorsByNumPatients(0, doctors.size());
+	}
+
+	/**
+	 * Retrieves a page of the information about doctors and relative number of assigned patients.
+	 * <p>
+	 * The strings and their order are the same as in {@link #doctorsByNumPatients()},
+	 * but only the doctors from position {@code offset} are returned, at most {@code limit} of them.
+	 * Groups of doctors with the same number of patients before the page are skipped as a whole,
+	 * so that the top doctors are read without visiting the others.
+	 * 
+	 * @param offset position of the first doctor, starting from 0
+	 * @param limit maximum number of doctors
+	 * @return the collection of strings with information about doctors and patients count
+	 */
+	public List<String> doctorsByNumPatients(int offset, int limit){
+		if (offset < 0 || limit < 0) {
+			throw new IllegalArgumentException("Negative offset or limit");
+		}
+		List<String> res = new ArrayList<>(Math.min(limit, doctors.size()));
+		for (Map.Entry<Integer,Set<Doctor>> entry : byNumPatients.descendingMap().entrySet()) {
+			if (res.size() == limit) {
+				break;
+			}
+			Set<Doctor> s = entry.getValue();
+			if (offset >= s.size()) {
+				offset -= s.size();
+				continue;
+			}
+			String count = String.format("%3d", entry.getKey()) + " : ";
+			for (Doctor doctor : s) {
+				if (offset > 0) {
+					offset--;
+				} else if (res.size() < limit) {
+					res.add(count + doctor.desc());
+				} else {
+					break;
+				}
+			}
+		}
 		return res;
 	}
 	
@@ -336,9 +434,9 @@ public class Clinic {
 	 * @return the collection of strings with speciality and patient count information.
 	 */
 	public Collection<String> countPatientsPerSpecialization(){
-		List<String> res = doctors.values().stream()
-				.collect(Collectors.groupingBy(Doctor::getSpecialization,
-						Collectors.summingInt(Doctor::getNum)))
+		// only the specializations are sorted, their counts are kept up to date
+		List<String> res = perSpecialization.entrySet().stream()
+				.collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue()[1]))
 				.entrySet().stream()
 				.sorted(Comparator.comparing((Map.Entry<String,Integer> entry) -> entry.getValue()).reversed()
 						.thenComparing((Map.Entry<String,Integer> entry) -> entry.getKey()))
@@ -11,6 +11,9 @@ public class Doctor {
 	private int id;
 	private String specialization;
 	private Collection<Patient> patients;
+	/** order of definition of the doctor id in the clinic, to break ties in sorting */
+	long seq;
+	private String desc;
 	
 	public Doctor(String first, String last, String ssn, int id, String specialization) {
 		this.first = first;
@@ -27,6 +30,7 @@ public class Doctor {
 
 	public void setId(int id) {
 		this.id = id;
+		desc = null;
 	}
 
 	public String getSpecialization() {
@@ -43,6 +47,7 @@ public class Doctor {
 
 	public void setFirst(String first) {
 		this.first = first;
+		desc = null;
 	}
 
 	public String getLast() {
@@ -51,6 +56,7 @@ public class Doctor {
 
 	public void setLast(String last) {
 		this.last = last;
+		desc = null;
 	}
 
 	public String getSsn() {
@@ -70,7 +76,10 @@ public class Doctor {
 	}
 	
 	public String desc() {
-		return getId() + " " + getLast() + " " + getFirst();
+		if (desc == null) {
+			desc = getId() + " " + getLast() + " " + getFirst();
+		}
+		return desc;
 	}
 	
 	public int getNum(){